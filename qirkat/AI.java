@@ -1,9 +1,10 @@
 package qirkat;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import static qirkat.PieceColor.*;
-import static qirkat.Move.SIDE;
+import static qirkat.TranspositionTable.*;
 import static qirkat.Move.MAX_INDEX;
 
 /** A Player that computes its own moves.
@@ -11,13 +12,99 @@ import static qirkat.Move.MAX_INDEX;
  */
 class AI extends Player {
 
-    /** Maximum minimax search depth before going to static evaluation. */
-    private static final int MAX_DEPTH = 8;
+    /** Depth of search when there is no time limit. */
+    private static final int MAX_DEPTH = 6;
+    /** Maximum depth of search when there is a time limit. */
+    static final int MAX_TIMED_DEPTH = 32;
+    /** Maximum number of captures searched by the quiescence search
+     *  beyond the nominal depth of a search.  As each capture removes a
+     *  piece, no line of captures is longer. */
+    private static final int MAX_QUIESCENCE_DEPTH = 24;
+    /** Maximum number of moves from the top of a search to any position
+     *  it visits. */
+    private static final int MAX_PLY = MAX_TIMED_DEPTH + MAX_QUIESCENCE_DEPTH;
     /** A position magnitude indicating a win (for white if positive, black
-     *  if negative). */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
+     *  if negative).  The search gives a position won or lost in N moves
+     *  from the top of the search a value of magnitude WINNING_VALUE - N,
+     *  so that it prefers quicker wins and slower losses. */
+    static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
+    /** The least magnitude of the value of a won or lost position. */
+    private static final int MIN_WINNING_VALUE = WINNING_VALUE - (1 << 16);
     /** A magnitude greater than a normal value. */
-    private static final int INFTY = Integer.MAX_VALUE;
+    static final int INFTY = Integer.MAX_VALUE;
+    /** Number of positions searched between checks of the clock. */
+    private static final int TIME_CHECK_INTERVAL = 1024;
+    /** Half-width of the initial aspiration window about the score of
+     *  the previous search. */
+    private static final int ASPIRATION_WINDOW = 4;
+    /** Factor by which aspiration windows grow after a failed search. */
+    private static final int ASPIRATION_GROWTH = 4;
+    /** Half-width beyond which an aspiration window becomes infinite. */
+    private static final int MAX_ASPIRATION_WINDOW = 1000;
+    /** Number of nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    /** Settings of the search that the 'option' command may change,
+     *  with their names and default values.  A switch is 1 if on and 0
+     *  if off.  Margins are in the units of staticScore. */
+    enum Option {
+        /** Quiescence search: the largest number of captures searched
+         *  beyond the nominal depth (at most MAX_QUIESCENCE_DEPTH, which
+         *  places no limit), or 0 to use static values at the leaves. */
+        QUIESCENCE_DEPTH("quiescence-depth", 12),
+        /** Late move reductions: search non-capturing moves late in the
+         *  order to LMR_REDUCTION fewer levels, once LMR_MOVES moves have
+         *  been searched fully, where at least LMR_DEPTH levels remain. */
+        LMR("lmr", 1), LMR_MOVES("lmr-moves", 6), LMR_DEPTH("lmr-depth", 3),
+        LMR_REDUCTION("lmr-reduction", 1),
+        /** Futility pruning: where at most FUTILITY_DEPTH levels remain
+         *  and the static value plus FUTILITY_MARGIN per level is at most
+         *  alpha, search only the first move. */
+        FUTILITY("futility", 1), FUTILITY_DEPTH("futility-depth", 2),
+        FUTILITY_MARGIN("futility-margin", 12),
+        /** Razoring: where at most RAZOR_DEPTH levels remain and the static
+         *  value plus RAZOR_MARGIN per level is at most alpha, return the
+         *  quiescence value, which plays out any pending captures, if that
+         *  is no better.  Unlike the others, applies where captures are
+         *  pending. */
+        RAZOR("razor", 0), RAZOR_DEPTH("razor-depth", 2),
+        RAZOR_MARGIN("razor-margin", 24),
+        /** Evaluation cache: log base 2 of the number of entries in a
+         *  cache of static values (at most MAX_EVAL_CACHE_BITS), or 0 for
+         *  none. */
+        EVAL_CACHE("eval-cache", 0);
+
+        /** An option named NAME whose value is initially DEFAULTVALUE. */
+        Option(String name, int defaultValue) {
+            _name = name;
+            _defaultValue = defaultValue;
+        }
+
+        /** Return the name by which the 'option' command knows me. */
+        String optionName() {
+            return _name;
+        }
+
+        /** Return my initial value. */
+        int defaultValue() {
+            return _defaultValue;
+        }
+
+        /** Return the option named NAME, or null if there is none. */
+        static Option find(String name) {
+            for (Option option : values()) {
+                if (option._name.equals(name)) {
+                    return option;
+                }
+            }
+            return null;
+        }
+
+        /** My name. */
+        private final String _name;
+        /** My initial value. */
+        private final int _defaultValue;
+    }
 
     /** A new AI for GAME that will play MYCOLOR. */
     AI(Game game, PieceColor myColor) {
@@ -29,150 +116,872 @@ class AI extends Player {
         Main.startTiming();
         Move move = findMove();
         Main.endTiming();
+        Main.reportStats("[depth %d, score %d, %d nodes, %d quiescence "
+                         + "nodes, pv %s]", _searchDepth, _searchScore,
+                         _totalNodes, _totalQuiescenceNodes,
+                         principalVariation());
+        long probes = _table.probes() - _initialProbes,
+            hits = _table.hits() - _initialHits;
+        Main.reportStats("[transposition table: %d probes, %d hits"
+                         + " (%.1f%%)]", probes, hits,
+                         probes == 0 ? 0.0 : 100.0 * hits / probes);
+        if (_evalCache != null) {
+            Main.reportStats("[eval cache: %d hits, %d misses]",
+                             _evalCache.hits(), _evalCache.misses());
+        }
         game().reportMove("%s moves %s.", myColor(), move);
+        if (game().pondering()) {
+            startPondering(move);
+        }
         return move;
     }
 
+    @Override
+    void endGame() {
+        stopSearch();
+    }
+
     /** Return a move for me from the current position, assuming there
-     *  is a move. */
+     *  is a move.  Searches to successively greater depths, keeping the
+     *  move found by the deepest search that was completed: to MAX_DEPTH
+     *  if the game has no time limit, and otherwise until the time limit
+     *  has passed, after at least one complete search.  If I have been
+     *  pondering this very position, simply continues that search, with
+     *  the time limit counted from when the pondering started, so that
+     *  a correct guess saves the time spent on it.  Otherwise, any
+     *  search in progress is abandoned, though what it stored in the
+     *  transposition table remains, and if the position is in the
+     *  game's opening book or tablebase, takes the move from there. */
     private Move findMove() {
         Board b = new Board(board());
-        if (myColor() == WHITE) {
-            findMove(b, MAX_DEPTH, true, 1, -INFTY, INFTY);
-        } else {
-            findMove(b, MAX_DEPTH, true, -1, -INFTY, INFTY);
+        if (_ponderBoard != null && _ponderBoard.equals(b)) {
+            _ponderBoard = null;
+            _pondering = false;
+            return finishSearch();
+        }
+        stopSearch();
+        noteTableCounts();
+        OpeningBook book = game().openingBook();
+        Move move = book == null ? null : bookMove(b, book);
+        if (move != null) {
+            return move;
+        }
+        Tablebase tablebase = game().tablebase();
+        if (tablebase != null && tablebase.probe(b) != 0) {
+            return tablebaseMove(b, tablebase);
+        }
+        startSearch(b, false);
+        return finishSearch();
+    }
+
+    /** Return a move from the position on BOARD chosen at random from
+     *  those for it in BOOK, in proportion to their weights, or null if
+     *  BOOK has none.  Entries whose moves are not legal or whose weights
+     *  are not positive, as in a corrupt book or one whose key matches
+     *  some other position, are ignored.  Records the results as for a
+     *  search of depth 0. */
+    private Move bookMove(Board board, OpeningBook book) {
+        int first = book.find(board.key());
+        if (first == -1) {
+            return null;
         }
-        return _lastFoundMove;
+        MoveList legal = new MoveList();
+        board.getMoves(legal);
+        long total;
+        total = 0;
+        for (int k = first;
+             k < book.size() && book.key(k) == board.key(); k += 1) {
+            if (usable(book, k, legal)) {
+                total += book.weight(k);
+            }
+        }
+        if (total == 0 || total > Integer.MAX_VALUE) {
+            return null;
+        }
+        int choice = game().nextRandom((int) total);
+        int i;
+        for (i = first; true; i += 1) {
+            if (usable(book, i, legal)) {
+                if (choice < book.weight(i)) {
+                    break;
+                }
+                choice -= book.weight(i);
+            }
+        }
+        Move move = Move.decode(book.move(i));
+        if (!board.legalMove(move)) {
+            return null;
+        }
+        _searchDepth = 0;
+        _searchScore = book.score(i);
+        _principalVariation = new long[] { book.move(i) };
+        _totalNodes = _totalQuiescenceNodes = 0;
+        return move;
+    }
+
+    /** Return true iff entry #K of BOOK has a positive weight and one of
+     *  the moves in LEGAL. */
+    private static boolean usable(OpeningBook book, int k, MoveList legal) {
+        if (book.weight(k) <= 0) {
+            return false;
+        }
+        for (int i = 0; i < legal.size(); i += 1) {
+            if (legal.get(i) == book.move(k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the best move from the position on BOARD, according to
+     *  TABLEBASE, which contains that position: the quickest win if there
+     *  is one, and otherwise the slowest loss.  Records the results as
+     *  for a search of depth 0. */
+    private Move tablebaseMove(Board board, Tablebase tablebase) {
+        MoveList moves = new MoveList();
+        board.getMoves(moves);
+        long best;
+        best = -1;
+        int bestScore = -INFTY;
+        for (int i = 0; i < moves.size(); i += 1) {
+            board.makeMove(moves.get(i));
+            int score = -tablebaseScore(tablebase.probe(board), 1);
+            board.undo();
+            if (score > bestScore) {
+                bestScore = score;
+                best = moves.get(i);
+            }
+        }
+        _searchDepth = 0;
+        _searchScore = bestScore;
+        _principalVariation = new long[] { best };
+        _totalNodes = _totalQuiescenceNodes = 0;
+        return Move.decode(best);
     }
 
-    /** The move found by the last call to one of the ...FindMove methods
-     *  below. */
-    private Move _lastFoundMove;
+    /** Return SCORE + OFFSET, limited to the range -INFTY .. INFTY, for
+     *  use as a bound of an aspiration window.  Scores from the tablebase
+     *  lie close enough to the ends of that range that the sum may not
+     *  fit in an int. */
+    static int windowBound(int score, int offset) {
+        return (int) Math.max(-INFTY, Math.min(INFTY, (long) score + offset));
+    }
+
+    /** Return SCORE, the value of a position PLY moves from the top of the
+     *  search, in the form in which the transposition table records it:
+     *  the distance of a win or loss counted from that position, rather
+     *  than from the top of the search, since the position may appear at
+     *  other plies. */
+    private static int toTable(int score, int ply) {
+        if (score >= MIN_WINNING_VALUE) {
+            return score + ply;
+        } else if (score <= -MIN_WINNING_VALUE) {
+            return score - ply;
+        }
+        return score;
+    }
 
-    /** Find a move from position BOARD and return its value, recording
-     *  the move found in _lastFoundMove iff SAVEMOVE. The move
-     *  should have maximal value or have value > BETA if SENSE==1,
-     *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *  of the board value and does not set _lastMoveFound. */
-    private int findMove(Board board, int depth, boolean saveMove, int sense,
-                         int alpha, int beta) {
-        Move best;
-        best = null;
-        int bestScore;
+    /** Return the value of a position PLY moves from the top of the
+     *  search that the transposition table records as SCORE.  The
+     *  inverse of toTable. */
+    private static int fromTable(int score, int ply) {
+        if (score >= MIN_WINNING_VALUE) {
+            return score - ply;
+        } else if (score <= -MIN_WINNING_VALUE) {
+            return score + ply;
+        }
+        return score;
+    }
 
-        if (sense == 1)  {
-            bestScore = -WINNING_VALUE;
+    /** Return the value, for the player to move, of a position PLY moves
+     *  from the top of the search whose tablebase value (see Tablebase)
+     *  is VALUE: a win or loss, valued as for a game that ends that many
+     *  moves from the top of the search. */
+    private static int tablebaseScore(int value, int ply) {
+        int score = WINNING_VALUE - ply - Tablebase.distance(value);
+        return value > 0 ? score : -score;
+    }
+
+    /** Start searching, in the background, the position that I expect
+     *  after my move MOVE from the current position and my opponent's
+     *  most likely reply: the second move of the principal variation, or
+     *  failing that, the best move stored in the transposition table.
+     *  Does nothing if there is no such reply, or if the position it
+     *  leads to is in the game's opening book or tablebase, since
+     *  findMove would not search it. */
+    private void startPondering(Move move) {
+        Board b = new Board(board());
+        b.makeMove(move);
+        if (b.gameOver()) {
+            return;
+        }
+        Move reply;
+        TranspositionTable.Entry entry = new TranspositionTable.Entry();
+        if (_principalVariation.length > 1) {
+            reply = Move.decode(_principalVariation[1]);
+        } else if (_table.probe(b.key(), entry) && entry.move != -1) {
+            reply = Move.decode(entry.move);
         } else {
-            bestScore = WINNING_VALUE;
+            return;
         }
-        if (board.gameOver()) {
-            board.undo();
-            if (sense == -1) {
-                return WINNING_VALUE;
-            } else {
-                return -WINNING_VALUE;
+        if (reply == null || !b.legalMove(reply)) {
+            return;
+        }
+        b.makeMove(reply);
+        OpeningBook book = game().openingBook();
+        Tablebase tablebase = game().tablebase();
+        if (b.gameOver() || (book != null && book.find(b.key()) != -1)
+            || (tablebase != null && tablebase.probe(b) != 0)) {
+            return;
+        }
+        _ponderBoard = new Board(b);
+        startSearch(b, true);
+    }
+
+    /** Start searching BOARD in the background, as for findMove.  If the
+     *  game calls for more than one thread, the others search the same
+     *  position at the same time (Lazy SMP), sharing only the
+     *  transposition table, which they fill with results that speed up
+     *  the main search; the move is always the main search's.  If
+     *  PONDERING, the time limit, though counted from now, does not
+     *  apply until _pondering is cleared. */
+    private void startSearch(Board board, boolean pondering) {
+        long limit = game().timeLimit();
+        int maxDepth = limit == 0 ? MAX_DEPTH : MAX_TIMED_DEPTH;
+        int threads = game().threads();
+        prepareSearch(threads, pondering);
+        _threads = new Thread[threads];
+        for (int k = 0; k < threads; k += 1) {
+            Searcher searcher = _searchers.get(k);
+            Board copy = k == 0 ? board : new Board(board);
+            _threads[k] = new Thread(() -> {
+                searcher._result = searcher.search(copy, maxDepth, limit);
+            });
+            _threads[k].setDaemon(true);
+            _threads[k].start();
+        }
+    }
+
+    /** Set up for a search with THREADS threads, PONDERING as for
+     *  startSearch, taking the options, time limit, and tablebase from
+     *  the game. */
+    private void prepareSearch(int threads, boolean pondering) {
+        _pondering = pondering;
+        _tablebase = game().tablebase();
+        _deadline =
+            System.nanoTime() + game().timeLimit() * NANOS_PER_MILLI;
+        _stopped = false;
+        for (Option option : Option.values()) {
+            _options[option.ordinal()] = game().option(option);
+        }
+        setEvalCache(Math.min(_options[Option.EVAL_CACHE.ordinal()],
+                              MAX_EVAL_CACHE_BITS));
+        _table.newSearch();
+        noteTableCounts();
+        while (_searchers.size() < threads) {
+            _searchers.add(new Searcher(_searchers.size()));
+        }
+    }
+
+    /** Search BOARD to DEPTH levels on this thread alone, with no time
+     *  limit, and return the encoding of the best move found (-1 if
+     *  there is none), whose value for the player to move is then
+     *  searchScore().  DEPTH must be between 1 and MAX_TIMED_DEPTH.
+     *  Ignores the opening book.  Used to build opening books. */
+    long search(Board board, int depth) {
+        if (depth < 1 || depth > MAX_TIMED_DEPTH) {
+            throw new IllegalArgumentException("bad search depth");
+        }
+        stopSearch();
+        prepareSearch(1, false);
+        return _searchers.get(0).search(new Board(board), depth, 0);
+    }
+
+    /** Return the value, for the player to move, of the position searched
+     *  by my last search. */
+    int searchScore() {
+        return _searchScore;
+    }
+
+    /** Wait for the main thread of the search in progress to finish,
+     *  then stop the others, and return the move it found. */
+    private Move finishSearch() {
+        join(_threads[0]);
+        stopSearch();
+        return Move.decode(_searchers.get(0)._result);
+    }
+
+    /** Stop the search in progress, if any, and wait for all its threads
+     *  to finish, totaling the positions they visited. */
+    private void stopSearch() {
+        if (_threads == null) {
+            return;
+        }
+        _stopped = true;
+        _totalNodes = _totalQuiescenceNodes = 0;
+        for (int k = 0; k < _threads.length; k += 1) {
+            join(_threads[k]);
+            _totalNodes += _searchers.get(k)._nodes;
+            _totalQuiescenceNodes += _searchers.get(k)._quiescenceNodes;
+        }
+        _threads = null;
+        _ponderBoard = null;
+    }
+
+    /** Wait for THREAD to finish. */
+    private static void join(Thread thread) {
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException excp) {
+                /* Ignore InterruptedException */
             }
         }
-        if (depth == 0) {
-            board.undo();
-            return staticScore(board);
+    }
+
+    /** Record the current numbers of probes and hits of _table, so that
+     *  myMove can report those of the search that follows. */
+    private void noteTableCounts() {
+        _initialProbes = _table.probes();
+        _initialHits = _table.hits();
+    }
+
+    /** Use an evaluation cache of 2 ** BITS entries, or none if BITS is
+     *  0, keeping the current cache if it is already that size. */
+    private void setEvalCache(int bits) {
+        if (bits == 0) {
+            _evalCache = null;
+        } else if (_evalCache == null || _evalCache.bits() != bits) {
+            _evalCache = new EvalCache(bits);
+        }
+    }
+
+    /** Return the principal variation found by my last search: the
+     *  sequence of moves, starting with the one I chose, that both sides
+     *  would make if they played as the search expected, separated by
+     *  blanks.  It may end before the depth of the search where the
+     *  rest of the line came from the transposition table. */
+    String principalVariation() {
+        StringBuilder result = new StringBuilder();
+        for (long move : _principalVariation) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            Move.appendTo(result, move);
         }
-        int score;
-        if (sense == 1) {
-            ArrayList<Move> legalMovesList = board.getLegalMoves();
-            for (Move legalMove : legalMovesList) {
+        return result.toString();
+    }
+
+    /** Depth and score (for me) of the last completed search. */
+    private int _searchDepth, _searchScore;
+
+    /** Principal variation of the last completed search. */
+    private long[] _principalVariation = new long[0];
+
+    /** Time (as given by System.nanoTime) at which the current search
+     *  must stop. */
+    private volatile long _deadline;
+
+    /** True iff the current search is on my opponent's time, and so is
+     *  not yet subject to the time limit. */
+    private volatile boolean _pondering;
+
+    /** The tablebase consulted by the current search, or null if none. */
+    private Tablebase _tablebase;
+
+    /** A copy of the position I am pondering, or null if none. */
+    private Board _ponderBoard;
+
+    /** The threads of the search in progress, the main one first, or null
+     *  if there is none. */
+    private Thread[] _threads;
+
+    /** True iff the current search has been stopped, either because its
+     *  time is up or, for helper threads, because the main search is
+     *  done. */
+    private volatile boolean _stopped;
+
+    /** The values of the Options for the current search, indexed by
+     *  ordinal. */
+    private final int[] _options = new int[Option.values().length];
+
+    /** Numbers of positions visited by all threads in the last search,
+     *  by the main search and by the quiescence search. */
+    private long _totalNodes, _totalQuiescenceNodes;
+
+    /** The searchers used by my searches, one per thread, the main one
+     *  first.  They persist from move to move, so that each keeps its
+     *  move-ordering statistics. */
+    private final ArrayList<Searcher> _searchers = new ArrayList<>();
+
+    /** Log base 2 of the number of buckets in _table. */
+    private static final int TABLE_BITS = 18;
+
+    /** Results of previous searches. */
+    private final TranspositionTable _table =
+        new TranspositionTable(TABLE_BITS);
+
+    /** Numbers of probes and hits of _table before the last search. */
+    private long _initialProbes, _initialHits;
+
+    /** Maximum log base 2 of the number of entries in _evalCache. */
+    private static final int MAX_EVAL_CACHE_BITS = 24;
+
+    /** Static values of positions seen by my searches, or null if they
+     *  are not cached. */
+    private EvalCache _evalCache;
+
+    /** Ordering scores of the hash move, of captures (plus the number of
+     *  jumps), and of the killer moves.  All exceed any history score. */
+    private static final int
+        HASH_MOVE_SCORE = Integer.MAX_VALUE,
+        CAPTURE_SCORE = 1 << 28,
+        KILLER_SCORE = 1 << 27;
+
+    /** Bound on history scores. */
+    private static final int MAX_HISTORY = 1 << 26;
+
+    /** The state of one thread's search.  Only the transposition table
+     *  is shared among searchers. */
+    private class Searcher {
+
+        /** A searcher with number ID.  Searcher 0 is the main one, whose
+         *  results are used; the others are helpers. */
+        Searcher(int id) {
+            _id = id;
+            for (int i = 0; i < _moveLists.length; i += 1) {
+                _moveLists[i] = new MoveList();
+            }
+            for (int i = 0; i < _captureLists.length; i += 1) {
+                _captureLists[i] = new MoveList();
+            }
+            for (long[] killers : _killers) {
+                killers[0] = killers[1] = -1;
+            }
+        }
+
+        /** Search BOARD by iterative deepening to depth MAXDEPTH at most,
+         *  as for AI.findMove(), with time limit LIMIT (milliseconds, or 0
+         *  for none), and return the encoding of the move found by the last
+         *  completed iteration.  If I am the main searcher, records the
+         *  results in _searchDepth, _searchScore and _principalVariation.
+         *  After the first, each iteration starts with a narrow window
+         *  around the score of the one before, widening it as long as the
+         *  score falls outside.  Helpers start with a deeper search when
+         *  their number is odd. */
+        long search(Board board, int maxDepth, long limit) {
+            _stoppable = false;
+            _nodes = _quiescenceNodes = 0;
+            _timeCheckCountdown = TIME_CHECK_INTERVAL;
+            ageHistory();
+            int sense = board.whoseMove() == WHITE ? 1 : -1;
+            long best;
+            best = -1;
+            int score = 0;
+            for (int depth = 1 + _id % 2; depth <= maxDepth; depth += 1) {
+                int alpha = -INFTY, beta = INFTY, delta = ASPIRATION_WINDOW;
+                if (depth > 1 && Math.abs(score) < MIN_WINNING_VALUE) {
+                    alpha = windowBound(score, -delta);
+                    beta = windowBound(score, delta);
+                }
+                while (true) {
+                    assert alpha < beta;
+                    int value = findMove(board, depth, 0, sense, alpha, beta);
+                    if (_stopped) {
+                        break;
+                    } else if (value <= alpha && alpha != -INFTY) {
+                        delta *= ASPIRATION_GROWTH;
+                        alpha = delta > MAX_ASPIRATION_WINDOW ? -INFTY
+                            : windowBound(score, -delta);
+                    } else if (value >= beta && beta != INFTY) {
+                        delta *= ASPIRATION_GROWTH;
+                        beta = delta > MAX_ASPIRATION_WINDOW ? INFTY
+                            : windowBound(score, delta);
+                    } else {
+                        score = value;
+                        break;
+                    }
+                }
+                if (_stopped) {
+                    break;
+                }
+                best = _foundMove;
+                if (_id == 0) {
+                    _searchDepth = depth;
+                    _searchScore = score;
+                    _principalVariation =
+                        Arrays.copyOf(_pv[0], _pvLength[0]);
+                    _stoppable = limit != 0;
+                }
+            }
+            return best;
+        }
+
+        /** _pv[P][P .. _pvLength[P] - 1] is the principal variation from the
+         *  current position P moves from the top of the search. */
+        private final long[][] _pv = new long[MAX_PLY + 1][MAX_PLY + 1];
+
+        /** See _pv. */
+        private final int[] _pvLength = new int[MAX_PLY + 1];
+
+        /** The move recorded by the last call to findMove below. */
+        private long _foundMove;
+
+        /** The encoding of the move found by my last completed search. */
+        private long _result;
+
+        /** Move lists for the searches, indexed by remaining depth, so that
+         *  each ply reuses the same list. */
+        private final MoveList[] _moveLists = new MoveList[MAX_TIMED_DEPTH + 1];
+
+        /** Move lists for the quiescence search, indexed by the number of
+         *  captures searched beyond the nominal depth. */
+        private final MoveList[] _captureLists =
+            new MoveList[MAX_QUIESCENCE_DEPTH + 1];
+
+        /** True iff I am the main searcher and my search may be stopped when
+         *  its time is up: that is, iff there is a time limit and this is
+         *  not the first iteration of the search. */
+        private boolean _stoppable;
+
+        /** Numbers of positions I visited in the current search, in the
+         *  main search and in the quiescence search. */
+        private long _nodes, _quiescenceNodes;
+
+        /** Number of positions left to visit before checkTime next
+         *  consults the clock.  Every position counted in _nodes or
+         *  _quiescenceNodes decrements it, including those that return
+         *  before calling checkTime. */
+        private int _timeCheckCountdown;
+
+        /** Receives the results of probes of _table. */
+        private final TranspositionTable.Entry _entry =
+            new TranspositionTable.Entry();
+
+        /** Find a move from position BOARD, which is PLY moves from the
+         *  position at the top of the search, and return its value for the
+         *  player to move, recording the move found in _foundMove iff PLY is
+         *  0.  SENSE is 1 if white is to move and -1 if black is.
+         *  Searches up to DEPTH levels.  If the value is at most ALPHA, the
+         *  result is an upper bound on it; if at least BETA, a lower bound;
+         *  otherwise it is exact, and the principal variation is left in
+         *  _pv[PLY].  The first move is searched with the window ALPHA to
+         *  BETA, the others with a null window just above the best value so
+         *  far, searching again with the full window only for those that
+         *  turn out to be better (principal variation search).  Away from
+         *  the principal variation, the search may be made selective by
+         *  the Options.  Where no capture is pending, late quiet moves
+         *  are searched to less depth, and near the leaves, positions
+         *  whose static value is far below ALPHA are cut short.  Near the
+         *  leaves, positions whose static value is further below ALPHA
+         *  may instead get the value of the quiescence search, which
+         *  plays out any pending captures, if that is no better
+         *  (razoring).  A position cut short after its first move gets at
+         *  least its static value plus the futility margin, the most its
+         *  other moves are assumed to be worth, so that the upper bound
+         *  stored for it covers them.  Positions other than the first that
+         *  are in the tablebase get their values from there.  Searching at
+         *  level 0 returns the value found by the quiescence search, and
+         *  does not set _foundMove.
+         *  Consults and updates the transposition table, except that a
+         *  search with PLY 0 always searches.  If the search is stoppable
+         *  and its time is up, sets _stopped.  Returns 0 at once once
+         *  _stopped is set.  BOARD is left as it was on entry. */
+        private int findMove(Board board, int depth, int ply,
+                             int sense, int alpha, int beta) {
+            if (depth == 0) {
+                return quiesce(board, 0, ply, sense, alpha, beta);
+            }
+            _nodes += 1;
+            _timeCheckCountdown -= 1;
+            _pvLength[ply] = ply;
+            if (board.gameOver()) {
+                return -(WINNING_VALUE - ply);
+            }
+            checkTime();
+            if (_stopped) {
+                return 0;
+            }
+            if (ply > 0 && _tablebase != null) {
+                int value = _tablebase.probe(board);
+                if (value != 0) {
+                    return tablebaseScore(value, ply);
+                }
+            }
+            long key = board.key();
+            long hashMove;
+            hashMove = -1;
+            if (_table.probe(key, _entry)) {
+                hashMove = _entry.move;
+                int score = fromTable(_entry.score, ply);
+                if (ply > 0 && _entry.depth >= depth
+                    && (_entry.bound == EXACT
+                        || (_entry.bound == LOWER && score >= beta)
+                        || (_entry.bound == UPPER && score <= alpha))) {
+                    return score;
+                }
+            }
+            boolean nullWindow = beta - alpha == 1;
+            boolean selective = nullWindow && !board.jumpPossible();
+            boolean futile = false;
+            int futileScore = 0;
+            if (nullWindow && (depth <= option(Option.RAZOR_DEPTH)
+                               || depth <= option(Option.FUTILITY_DEPTH))) {
+                int value = sense * staticScore(board);
+                if (option(Option.RAZOR) != 0
+                    && depth <= option(Option.RAZOR_DEPTH)
+                    && value + option(Option.RAZOR_MARGIN) * depth <= alpha) {
+                    int score = quiesce(board, 0, ply, sense, alpha, beta);
+                    if (score <= alpha) {
+                        return score;
+                    }
+                }
+                futileScore = value + option(Option.FUTILITY_MARGIN) * depth;
+                futile = selective && option(Option.FUTILITY) != 0
+                    && depth <= option(Option.FUTILITY_DEPTH)
+                    && futileScore <= alpha;
+            }
+            long best;
+            best = -1;
+            int bestScore = -WINNING_VALUE;
+            MoveList moves = _moveLists[depth];
+            moves.clear();
+            board.getMoves(moves);
+            orderMoves(moves, hashMove, ply);
+            for (int i = 0; i < moves.size(); i += 1) {
+                long legalMove = moves.get(i);
+                if (futile && i > 0) {
+                    bestScore = Math.max(bestScore, futileScore);
+                    break;
+                }
+                int low = Math.max(alpha, bestScore);
+                int score;
                 board.makeMove(legalMove);
-                score = findMove(board, depth - 1, false,
-                        sense * -1, bestScore, beta);
-                if (score >= bestScore) {
+                if (i == 0) {
+                    score = -findMove(board, depth - 1, ply + 1, -sense,
+                                      -beta, -low);
+                } else {
+                    int reduction = 0;
+                    if (selective && option(Option.LMR) != 0
+                        && i >= option(Option.LMR_MOVES)
+                        && depth >= option(Option.LMR_DEPTH)
+                        && moves.score(i) < KILLER_SCORE
+                        && !board.jumpPossible()) {
+                        reduction = Math.min(option(Option.LMR_REDUCTION),
+                                             depth - 1);
+                    }
+                    score = -findMove(board, depth - 1 - reduction, ply + 1,
+                                      -sense, -low - 1, -low);
+                    if (reduction > 0 && score > low && !_stopped) {
+                        score = -findMove(board, depth - 1, ply + 1, -sense,
+                                          -low - 1, -low);
+                    }
+                    if (score > low && score < beta && !_stopped) {
+                        score = -findMove(board, depth - 1, ply + 1, -sense,
+                                          -beta, -low);
+                    }
+                }
+                board.undo();
+                if (_stopped) {
+                    return 0;
+                }
+                if (score > bestScore || best == -1) {
                     bestScore = score;
                     best = legalMove;
+                    if (score > low) {
+                        notePV(legalMove, ply);
+                    }
                     if (bestScore >= beta) {
+                        if (Move.numJumps(legalMove) == 0) {
+                            noteQuietCutoff(legalMove, depth, ply);
+                        }
                         break;
                     }
                 }
             }
-        } else {
-            ArrayList<Move> legalMovesList = board.getLegalMoves();
-            for (Move legalMove : legalMovesList) {
-                board.makeMove(legalMove);
-                score = findMove(board, depth - 1, false,
-                        sense * -1, alpha, bestScore);
-                if (score <= bestScore) {
+            _table.store(key, depth,
+                         bestScore >= beta ? LOWER
+                         : bestScore > alpha ? EXACT : UPPER,
+                         toTable(bestScore, ply), best);
+            if (ply == 0) {
+                _foundMove = best;
+            }
+            return bestScore;
+        }
+
+        /** Return the value of BOARD, which is PLY moves from the top of
+         *  the search, for the player to move, as for findMove, after
+         *  playing out the captures available from it.  SENSE is 1 if white
+         *  is to move and -1 if black is.  Because captures are forced, a
+         *  position where the player to move can capture is worth the best
+         *  of its captures; only a quiet position, or one DEPTH captures
+         *  beyond the nominal depth where DEPTH is the quiescence-depth
+         *  Option, gets its static value.  Returns 0 at once once _stopped
+         *  is set.  BOARD is left as it was on entry. */
+        private int quiesce(Board board, int depth, int ply,
+                            int sense, int alpha, int beta) {
+            _quiescenceNodes += 1;
+            _timeCheckCountdown -= 1;
+            _pvLength[ply] = ply;
+            if (board.gameOver()) {
+                return -(WINNING_VALUE - ply);
+            }
+            if (depth >= Math.min(option(Option.QUIESCENCE_DEPTH),
+                                  MAX_QUIESCENCE_DEPTH)
+                || !board.jumpPossible()) {
+                return sense * staticScore(board);
+            }
+            checkTime();
+            if (_stopped) {
+                return 0;
+            }
+            MoveList moves = _captureLists[depth];
+            moves.clear();
+            board.getMoves(moves);
+            for (int i = 0; i < moves.size(); i += 1) {
+                moves.setScore(i, Move.numJumps(moves.get(i)));
+            }
+            moves.sort();
+            int bestScore = -WINNING_VALUE;
+            for (int i = 0; i < moves.size(); i += 1) {
+                long capture = moves.get(i);
+                int low = Math.max(alpha, bestScore);
+                board.makeMove(capture);
+                int score = -quiesce(board, depth + 1, ply + 1, -sense,
+                                     -beta, -low);
+                board.undo();
+                if (_stopped) {
+                    return 0;
+                }
+                if (score > bestScore) {
                     bestScore = score;
-                    best = legalMove;
-                    if (bestScore <= alpha) {
+                    if (score > low) {
+                        notePV(capture, ply);
+                    }
+                    if (bestScore >= beta) {
                         break;
                     }
                 }
             }
+            return bestScore;
         }
 
-        if (saveMove) {
-            _lastFoundMove = best;
+        /** Return the value of OPTION for the current search. */
+        private int option(Option option) {
+            return _options[option.ordinal()];
         }
-        board.undo();
-        return bestScore;
-    }
 
-    /** Return a heuristic value for BOARD. */
-    private int staticScore(Board board) {
-        int total = 0;
-        for (int k = 0; k <= MAX_INDEX; k++) {
-            total += squareValue(board, k);
+        /** If the search is stoppable and not pondering, and its time is
+         *  up, set _stopped.  Consults the clock only once at least
+         *  TIME_CHECK_INTERVAL positions have been visited since it last
+         *  did. */
+        private void checkTime() {
+            if (_timeCheckCountdown > 0) {
+                return;
+            }
+            _timeCheckCountdown = TIME_CHECK_INTERVAL;
+            if (_stoppable && !_pondering
+                && System.nanoTime() - _deadline > 0) {
+                _stopped = true;
+            }
         }
-        return total;
-    }
 
-    /** Return value of the piece at the position K index of BOARD. */
-    private int squareValue(Board board, int k) {
-        if (board.get(k) == EMPTY) {
-            return 0;
+        /** Record that MOVE, followed by the principal variation found for
+         *  the position after it, is the principal variation from the
+         *  position PLY moves from the top of the search. */
+        private void notePV(long move, int ply) {
+            long[] pv = _pv[ply];
+            pv[ply] = move;
+            int n = _pvLength[ply + 1];
+            System.arraycopy(_pv[ply + 1], ply + 1, pv, ply + 1, n - ply - 1);
+            _pvLength[ply] = n;
         }
-        if (board.get(k) == WHITE) {
-            if (getRow(k) == 5) {
-                return 0;
-            }
-            int rawScore = (SIDE - getRow(k) + 1) * 4;
-            ArrayList<Move> illegalHorList = board.getIllegalHorWhite();
-            for (Move illegalMove: illegalHorList) {
-                if (illegalMove.fromIndex() == k) {
-                    if (illegalMove.isRightMove()) {
-                        rawScore -= (5 - getCol(k));
-                    } else {
-                        rawScore -= (getCol(k) - 1);
-                    }
+
+        /** Sort MOVES, the moves from a position PLY moves from the top of
+         *  the search, into the order in which to search them: HASHMOVE (the
+         *  best move found by an earlier search, or -1), then captures, the
+         *  longest first, then the killer moves for PLY, then other moves in
+         *  order of decreasing history score.  Helper searchers instead take
+         *  the moves at the top of the search in generation order, rotated
+         *  by their number, so that they explore different parts of the
+         *  tree from the main search. */
+        private void orderMoves(MoveList moves, long hashMove, int ply) {
+            long[] killers = _killers[ply];
+            for (int i = 0; i < moves.size(); i += 1) {
+                long move = moves.get(i);
+                int score;
+                if (ply == 0 && _id > 0) {
+                    score = -((i + moves.size() - _id % moves.size())
+                              % moves.size());
+                } else if (move == hashMove) {
+                    score = HASH_MOVE_SCORE;
+                } else if (Move.numJumps(move) > 0) {
+                    score = CAPTURE_SCORE + Move.numJumps(move);
+                } else if (move == killers[0]) {
+                    score = KILLER_SCORE + 1;
+                } else if (move == killers[1]) {
+                    score = KILLER_SCORE;
+                } else {
+                    score = _history[Move.fromIndex(move)][Move.toIndex(move)];
                 }
+                moves.setScore(i, score);
             }
-            return rawScore;
-        } else {
-            int rawScore = (getRow(k) * 4);
-            if (getRow(k) == 1) {
-                return 0;
+            moves.sort();
+        }
+
+        /** Record that the non-capturing MOVE caused a cutoff in a search of
+         *  DEPTH levels PLY moves from the top of the search. */
+        private void noteQuietCutoff(long move, int depth, int ply) {
+            long[] killers = _killers[ply];
+            if (killers[0] != move) {
+                killers[1] = killers[0];
+                killers[0] = move;
             }
-            ArrayList<Move> illegalHorList = board.getIllegalHorBlack();
-            for (Move illegalMove: illegalHorList) {
-                if (illegalMove.fromIndex() == k) {
-                    if (illegalMove.isRightMove()) {
-                        rawScore -= (5 - getCol(k));
-                    } else {
-                        rawScore -= (getCol(k) - 1);
-                    }
-                }
+            int[] history = _history[Move.fromIndex(move)];
+            int to = Move.toIndex(move);
+            history[to] += depth * depth;
+            if (history[to] > MAX_HISTORY) {
+                ageHistory();
             }
-            return -rawScore;
+        }
 
+        /** Reduce all history scores, so that recent cutoffs count for more
+         *  than old ones. */
+        private void ageHistory() {
+            for (int[] history : _history) {
+                for (int to = 0; to < history.length; to += 1) {
+                    history[to] /= 2;
+                }
+            }
         }
-    }
 
-    /** Return row value of square K as an integer. */
-    private int getRow(int k) {
-        return (k / 5) + 1;
+        /** _killers[P] holds the two most recent non-capturing moves (-1 if
+         *  none) that caused cutoffs P moves from the top of the search,
+         *  the most recent first. */
+        private final long[][] _killers = new long[MAX_TIMED_DEPTH + 1][2];
+
+        /** _history[F][T] measures how often non-capturing moves from square
+         *  F to square T have caused cutoffs, weighted by depth. */
+        private final int[][] _history = new int[MAX_INDEX + 1][MAX_INDEX + 1];
+
+        /** My number: 0 for the main searcher. */
+        private final int _id;
     }
 
-    /** Return column value of square K as an integer. */
-    private int getCol(int k) {
-        return (k % 5) + 1;
+    /** Return a heuristic value for BOARD, from _evalCache if it is
+     *  there. */
+    private int staticScore(Board board) {
+        EvalCache cache = _evalCache;
+        if (cache == null) {
+            return board.score();
+        }
+        long key = board.key();
+        long value = cache.get(key);
+        if (value == EvalCache.MISSING) {
+            int score = board.score();
+            cache.put(key, score);
+            return score;
+        }
+        return (int) value;
     }
 }
@@ -0,0 +1,57 @@
+package qirkat;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static qirkat.AI.INFTY;
+import static qirkat.AI.WINNING_VALUE;
+import static qirkat.PieceColor.*;
+
+/** Tests of the AI class.
+ *  @author Chris Sreesangkom
+ */
+public class AITest {
+
+    /** Masks of some squares. */
+    private static final int
+        A1 = 1 << Move.index('a', '1'),
+        B1 = 1 << Move.index('b', '1'),
+        A3 = 1 << Move.index('a', '3');
+
+    @Test
+    public void testWindowBound() {
+        assertEquals(10, AI.windowBound(6, 4));
+        assertEquals(2, AI.windowBound(6, -4));
+        assertEquals(WINNING_VALUE - 6, AI.windowBound(WINNING_VALUE - 10, 4));
+        assertEquals(INFTY, AI.windowBound(WINNING_VALUE - 2, 4));
+        assertEquals(-INFTY, AI.windowBound(-WINNING_VALUE + 2, -4));
+        assertEquals(INFTY, AI.windowBound(WINNING_VALUE, 1 << 20));
+    }
+
+    /** A search of a position won according to the tablebase finds the
+     *  quickest win, and the tablebase's value for it, although its
+     *  aspiration windows lie at the very end of the range of values. */
+    @Test
+    public void testTablebaseWin() throws IOException {
+        File file = File.createTempFile("qirkat", ".tb");
+        file.deleteOnExit();
+        Tablebase.main(new String[] { "3", file.getPath() });
+        Board board = new Board();
+        Game game = new Game(board, (prompt) -> null, new TextReporter());
+        game.doTablebase(new String[] { file.getPath() });
+        Tablebase table = game.tablebase();
+        board.setPieces(A1 | B1, A3, 0, 0, WHITE);
+        int value = table.probe(board);
+        assertTrue(value > 0);
+        int distance = Tablebase.distance(value);
+        AI ai = new AI(game, WHITE);
+        Move move = Move.decode(ai.search(board, 8));
+        assertEquals(WINNING_VALUE - distance, ai.searchScore());
+        assertTrue(board.legalMove(move));
+        board.makeMove(move);
+        assertEquals(distance - 1, Tablebase.distance(table.probe(board)));
+    }
+}
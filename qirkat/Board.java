@@ -1,12 +1,13 @@
 package qirkat;
 
-import java.util.Observable;
 import java.util.ArrayList;
-import java.util.Stack;
+import java.util.Arrays;
 import java.util.Formatter;
-import java.util.Observer;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static qirkat.PieceColor.*;
+import static java.lang.Math.abs;
 import static qirkat.Move.*;
 
 /** A Qirkat board.   The squares are labeled by column (a char value between
@@ -20,7 +21,7 @@ import static qirkat.Move.*;
  *  Moves on this board are denoted by Moves.
  *  @author Chris Sreesangkom
  */
-class Board extends Observable {
+class Board {
 
     /** A new, cleared board at the start of the game. */
     Board() {
@@ -32,6 +33,12 @@ class Board extends Observable {
         internalCopy(b);
     }
 
+    /** A Board with nothing set up, for use by ConstantBoard, which
+     *  takes its contents from another Board.  UNUSED distinguishes
+     *  this constructor. */
+    private Board(Void unused) {
+    }
+
     /** Return a constant view of me (allows any access method, but no
      *  method that modifies it). */
     Board constantView() {
@@ -41,11 +48,9 @@ class Board extends Observable {
     /** Clear me to my starting state, with pieces in their initial
      *  positions. */
     void clear() {
-        _whoseMove = WHITE;
-        _gameOver = false;
-        _illegalHorBlack = new ArrayList<>();
-        _illegalHorWhite = new ArrayList<>();
-        _boardsStack = new Stack<>();
+        setWhoseMove(WHITE);
+        clearRestrictions();
+        _numUndos = 0;
 
         for (int k = 0; k < 10; k++) {
             set(k, WHITE);
@@ -55,12 +60,11 @@ class Board extends Observable {
         set(12, EMPTY);
         set(13, WHITE);
         set(14, WHITE);
-        for (int k = 15; k < _board.length; k++) {
+        for (int k = 15; k <= MAX_INDEX; k++) {
             set(k, BLACK);
         }
-        _legalMoves = getMoves();
-        setChanged();
-        notifyObservers();
+        _legalMoves = null;
+        changed(ALL_SQUARES);
     }
 
     /** Copy B into me. */
@@ -70,19 +74,20 @@ class Board extends Observable {
 
     /** Copy B into me. */
     private void internalCopy(Board b) {
-        for (int i = 0; i < _board.length; i++) {
-            set(i, b.get(i));
-        }
-        _illegalHorBlack = new ArrayList<>();
-        _illegalHorWhite = new ArrayList<>();
-        _boardsStack = new Stack<>();
-        _legalMoves = new ArrayList<>();
+        b = b.source();
+        _white = b._white;
+        _black = b._black;
+        _key = b._key;
+        _score = b._score;
+        System.arraycopy(b._noLeft, 0, _noLeft, 0, _noLeft.length);
+        System.arraycopy(b._noRight, 0, _noRight, 0, _noRight.length);
+        _legalMoves = null;
         _whoseMove = b._whoseMove;
-        _illegalHorBlack.addAll(b._illegalHorBlack);
-        _illegalHorWhite.addAll(b._illegalHorWhite);
-        _legalMoves.addAll(b._legalMoves);
-        _gameOver = b._gameOver;
-        _boardsStack.addAll(b._boardsStack);
+        _undos = new ArrayList<>();
+        for (int i = 0; i < b._numUndos; i += 1) {
+            _undos.add(new Undo(b._undos.get(i)));
+        }
+        _numUndos = b._numUndos;
     }
 
     /** Set my contents as defined by STR.  STR consists of 25 characters,
@@ -116,21 +121,46 @@ class Board extends Observable {
                 break;
             }
         }
-        _illegalHorBlack = new ArrayList<>();
-        _illegalHorWhite = new ArrayList<>();
-        _boardsStack = new Stack<>();
-        _gameOver = false;
-        _whoseMove = nextMove;
-        _legalMoves = getMoves();
-        _gameOver = !isMove();
-        setChanged();
-        notifyObservers();
+        clearRestrictions();
+        _numUndos = 0;
+        setWhoseMove(nextMove);
+        _legalMoves = null;
+        changed(ALL_SQUARES);
+    }
+
+    /** Set my contents to white pieces on the squares in the mask WHITE
+     *  and black pieces on those in BLACK, which must be disjoint, with
+     *  the pieces on the squares in NOLEFT and NORIGHT barred from
+     *  stepping left and right, respectively, and with NEXTMOVE to
+     *  move.  Leaves no moves to undo. */
+    void setPieces(int white, int black, int noLeft, int noRight,
+                   PieceColor nextMove) {
+        assert (white & black) == 0 && (noLeft & noRight) == 0;
+        assert ((noLeft | noRight) & ~(white | black)) == 0;
+        for (int k = 0; k <= MAX_INDEX; k += 1) {
+            set(k, (white & bit(k)) != 0 ? WHITE
+                : (black & bit(k)) != 0 ? BLACK : EMPTY);
+        }
+        clearRestrictions();
+        _score -= squareScores(noLeft | noRight);
+        for (PieceColor c : PIECE_COLORS) {
+            int i = c.ordinal(), mine = pieces(c);
+            _noLeft[i] = noLeft & mine;
+            _noRight[i] = noRight & mine;
+            _key ^= restrictionKeys(c, 0, _noLeft[i])
+                ^ restrictionKeys(c, 1, _noRight[i]);
+        }
+        _score += squareScores(noLeft | noRight);
+        _numUndos = 0;
+        setWhoseMove(nextMove);
+        _legalMoves = null;
+        changed(ALL_SQUARES);
     }
 
     /** Return true iff the game is over: i.e., if the current player has
      *  no moves. */
     boolean gameOver() {
-        return _gameOver;
+        return !isMove();
     }
 
     /** Return the current contents of square C R, where 'a' <= C <= 'e',
@@ -143,7 +173,32 @@ class Board extends Observable {
     /** Return the current contents of the square at linearized index K. */
     PieceColor get(int k) {
         assert validSquare(k);
-        return _board[k];
+        if ((_white & (1 << k)) != 0) {
+            return WHITE;
+        } else if ((_black & (1 << k)) != 0) {
+            return BLACK;
+        } else {
+            return EMPTY;
+        }
+    }
+
+    /** Return the bit mask of the squares occupied by pieces of color
+     *  C, in which bit K is set iff get(K) == C.  For EMPTY, returns the
+     *  mask of empty squares. */
+    int pieces(PieceColor c) {
+        switch (c) {
+        case WHITE:
+            return _white;
+        case BLACK:
+            return _black;
+        default:
+            return ALL_SQUARES & ~(_white | _black);
+        }
+    }
+
+    /** Return the number of pieces of color C on the board. */
+    int numPieces(PieceColor c) {
+        return Integer.bitCount(pieces(c));
     }
 
     /** Set get(C, R) to V, where 'a' <= C <= 'e', and
@@ -156,12 +211,113 @@ class Board extends Observable {
     /** Set get(K) to V, where K is the linearized index of a square. */
     private void set(int k, PieceColor v) {
         assert validSquare(k);
-        _board[k] = v;
+        int bit = 1 << k;
+        _score -= squareScore(k);
+        if ((_white & bit) != 0) {
+            _key ^= PIECE_KEYS[WHITE.ordinal()][k];
+        } else if ((_black & bit) != 0) {
+            _key ^= PIECE_KEYS[BLACK.ordinal()][k];
+        }
+        _white &= ~bit;
+        _black &= ~bit;
+        if (v == WHITE) {
+            _white |= bit;
+        } else if (v == BLACK) {
+            _black |= bit;
+        }
+        if (v.isPiece()) {
+            _key ^= PIECE_KEYS[v.ordinal()][k];
+        }
+        _score += squareScore(k);
+    }
+
+    /** Make C the player to move. */
+    private void setWhoseMove(PieceColor c) {
+        if ((_whoseMove == BLACK) != (c == BLACK)) {
+            _key ^= BLACK_TO_MOVE_KEY;
+        }
+        _whoseMove = c;
+    }
+
+    /** Return a 64-bit Zobrist hash of the current position, covering the
+     *  pieces, the player to move, and the horizontal restrictions.  Equal
+     *  positions have equal keys; unequal ones almost never do. */
+    long key() {
+        return _key;
+    }
+
+    /** Return a heuristic value of the current position: positive
+     *  favors white, negative black.  Each piece is worth more the
+     *  farther it is from the row on which it would stop moving forward,
+     *  less if it is barred from stepping sideways toward the center, and
+     *  nothing once it has reached that row.  The value is maintained as
+     *  pieces and restrictions change, so this takes constant time. */
+    int score() {
+        return _score;
+    }
+
+    /** Return the contribution of square K to score(). */
+    private int squareScore(int k) {
+        int bit = bit(k), i;
+        if ((_white & bit) != 0) {
+            i = WHITE.ordinal();
+        } else if ((_black & bit) != 0) {
+            i = BLACK.ordinal();
+        } else {
+            return 0;
+        }
+        if ((_noRight[i] & bit) != 0) {
+            return SQUARE_VALUES[i][NO_RIGHT][k];
+        } else if ((_noLeft[i] & bit) != 0) {
+            return SQUARE_VALUES[i][NO_LEFT][k];
+        } else {
+            return SQUARE_VALUES[i][FREE][k];
+        }
+    }
+
+    /** Return the total contribution of the squares in MASK to
+     *  score(). */
+    private int squareScores(int mask) {
+        int result;
+        result = 0;
+        for (; mask != 0; mask &= mask - 1) {
+            result += squareScore(Integer.numberOfTrailingZeros(mask));
+        }
+        return result;
+    }
+
+    /** Return the Board whose contents I show: myself, unless I am a
+     *  constant view of another Board. */
+    Board source() {
+        return this;
     }
 
-    /** Return true iff MOV is legal on the current board. */
+    /** Return true iff MOV is legal on the current board.  Checks MOV
+     *  directly rather than searching the list of legal moves. */
     boolean legalMove(Move mov) {
-        return _legalMoves.contains(mov);
+        if (mov == null || get(mov.fromIndex()) != _whoseMove) {
+            return false;
+        }
+        int k = mov.fromIndex(),
+            opp = pieces(_whoseMove.opposite()),
+            empty = pieces(EMPTY);
+        if (!mov.isJump()) {
+            return jumpers() == 0 && (empty & bit(mov.toIndex())) != 0
+                && contains(STEP_TARGETS[_whoseMove.ordinal()][k],
+                            mov.toIndex())
+                && !isRestricted(k, mov.toIndex());
+        }
+        for (; mov != null; mov = mov.jumpTail()) {
+            int over = mov.jumpedIndex(), to = mov.toIndex();
+            if (mov.fromIndex() != k || !contains(JUMP_PAIRS[k], to)
+                || (opp & bit(over)) == 0 || (empty & bit(to)) == 0) {
+                return false;
+            }
+            opp &= ~bit(over);
+            empty = (empty | bit(k) | bit(over)) & ~bit(to);
+            k = to;
+        }
+        return !canJump(k, opp, empty);
     }
 
     /** Return a list of all legal moves from the current position. */
@@ -173,100 +329,89 @@ class Board extends Observable {
 
     /** Add all legal moves from the current position to MOVES. */
     void getMoves(ArrayList<Move> moves) {
-        if (gameOver()) {
-            return;
+        MoveList list = new MoveList();
+        getMoves(list);
+        for (int i = 0; i < list.size(); i += 1) {
+            moves.add(Move.decode(list.get(i)));
         }
-        if (jumpPossible()) {
-            for (int k = 0; k <= MAX_INDEX; k += 1) {
-                getJumps(moves, k);
+    }
+
+    /** Add the encodings of all legal moves from the current position to
+     *  MOVES.  Allocates nothing unless MOVES must grow. */
+    void getMoves(MoveList moves) {
+        int jumpers = jumpers();
+        if (jumpers != 0) {
+            int opp = pieces(_whoseMove.opposite()), empty = pieces(EMPTY);
+            for (; jumpers != 0; jumpers &= jumpers - 1) {
+                int k = Integer.numberOfTrailingZeros(jumpers);
+                getJumps(moves, Move.step(k, k), k, opp, empty);
             }
         } else {
-            for (int k = 0; k <= MAX_INDEX; k += 1) {
-                getMoves(moves, k);
+            for (int m = pieces(_whoseMove); m != 0; m &= m - 1) {
+                getMoves(moves, Integer.numberOfTrailingZeros(m));
             }
         }
     }
 
     /** Add all legal non-capturing moves from the position
      *  with linearized index K to MOVES. */
-    private void getMoves(ArrayList<Move> moves, int k) {
-        PieceColor piece = get(k);
-        if (piece != _whoseMove) {
-            return;
-        }
-        if (piece == WHITE
-                && row(k) == '5') {
-            return;
-        }
-        if (piece == BLACK
-                && row(k) == '1') {
-            return;
+    private void getMoves(MoveList moves, int k) {
+        int empty = pieces(EMPTY);
+        for (int to : STEP_TARGETS[_whoseMove.ordinal()][k]) {
+            if ((empty & bit(to)) == 0 || isRestricted(k, to)) {
+                continue;
+            }
+            moves.add(Move.step(k, to));
         }
-        for (int i: _allNeighbors) {
-            if (!isPossibleMove(k, i)) {
+    }
+
+    /** Helper recursive function to add to MOVES all complete jump
+     *  sequences that extend the jump sequence SOFAR, which leaves the
+     *  jumping piece on square K.  OPP and EMPTY are the masks of
+     *  opposing pieces and empty squares at this point in the jump
+     *  sequence. */
+    private void getJumps(MoveList moves, long soFar, int k,
+                          int opp, int empty) {
+        int[] jumps = JUMP_PAIRS[k];
+        for (int j = 0; j < jumps.length; j += 2) {
+            int over = jumps[j], to = jumps[j + 1];
+            if ((empty & bit(to)) == 0 || (opp & bit(over)) == 0) {
                 continue;
             }
-            if (get(k + i) == EMPTY) {
-                Move m = move(col(k), row(k), col(k + i), row(k + i));
-                if (_whoseMove == WHITE
-                        && _illegalHorWhite.contains(m)) {
-                    continue;
-                }
-                if (_whoseMove == BLACK
-                        && _illegalHorBlack.contains(m)) {
-                    continue;
-                }
-                moves.add(m);
+            long next = Move.extend(soFar, JUMP_DIRECTIONS[k][j / 2]);
+            int nextOpp = opp & ~bit(over),
+                nextEmpty = (empty | bit(k) | bit(over)) & ~bit(to);
+            if (canJump(to, nextOpp, nextEmpty)) {
+                getJumps(moves, next, to, nextOpp, nextEmpty);
+            } else {
+                moves.add(next);
             }
         }
     }
 
-    /** Add all legal captures from the position with linearized index K
-     *  to MOVES. */
-    private void getJumps(ArrayList<Move> moves, int k) {
-        PieceColor piece = get(k);
-        if (piece != _whoseMove || !jumpPossible(k)) {
-            return;
+    /** Return true iff a piece on square K can capture, given that OPP and
+     *  EMPTY are the masks of opposing pieces and empty squares. */
+    private static boolean canJump(int k, int opp, int empty) {
+        int[] jumps = JUMP_PAIRS[k];
+        for (int j = 0; j < jumps.length; j += 2) {
+            if ((opp & bit(jumps[j])) != 0
+                && (empty & bit(jumps[j + 1])) != 0) {
+                return true;
+            }
         }
-        moves.addAll(getJumpsList(k));
+        return false;
     }
 
-    /** Helper recursive function to help get all jump moves with next
-     *  jumps as well for square K, return in the form of ArrayList. */
-    private ArrayList<Move> getJumpsList(int k) {
-        ArrayList<Move> result = new ArrayList<>();
-        if (!this.jumpPossible(k)) {
-            return result;
-        }
-        for (int i: _allNeighbors) {
-            if (!isValidNeighbor(k, i)) {
-                continue;
-            }
-            if (get(k + i) == _whoseMove.opposite()) {
-                if (!isValidNeighbor(k + i, i)) {
-                    continue;
-                }
-                if (get(k + i + i) == EMPTY) {
-                    Move m = move(col(k), row(k),
-                            col(k + i + i), row(k + i + i));
-                    PieceColor initialK = get(k);
-                    set(k, EMPTY);
-                    set(k + i, EMPTY);
-                    set(k + i + i, _whoseMove);
-                    ArrayList<Move> nextJumps = getJumpsList(k + i + i);
-                    set(k + i + i, EMPTY);
-                    for (Move next: nextJumps) {
-                        result.add(move(m, next));
-                    }
-                    if (nextJumps.size() == 0) {
-                        result.add(m);
-                    }
-                    set(k, initialK);
-                    set(k + i, _whoseMove.opposite());
-                }
+    /** Return true iff the landing square TO appears in the jump pairs
+     *  or step targets LIST.  For jump pairs, only landing squares can
+     *  match, since a jumped-over square is always adjacent. */
+    private static boolean contains(int[] list, int to) {
+        for (int k : list) {
+            if (k == to) {
+                return true;
             }
         }
-        return result;
+        return false;
     }
 
     /** Return true iff MOV is a valid jump sequence on the current board.
@@ -276,7 +421,7 @@ class Board extends Observable {
         if (mov == null) {
             return true;
         }
-        if (_legalMoves.contains(mov)) {
+        if (legalMove(mov)) {
             if (mov.jumpTail() == null) {
                 return true;
             }
@@ -293,35 +438,27 @@ class Board extends Observable {
     /** Return true iff a jump is possible for a piece at position with
      *  linearized index K. */
     boolean jumpPossible(int k) {
-        PieceColor piece = get(k);
-        if (piece != _whoseMove) {
-            return false;
-        }
-        for (int i: _allNeighbors) {
-            if (!isValidNeighbor(k, i)) {
-                continue;
-            }
-            if (get(k + i) == _whoseMove.opposite()) {
-                if (!isValidNeighbor(k + i, i)) {
-                    continue;
-                }
-                if (get(k + i + i) == EMPTY) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        return (jumpers() & bit(k)) != 0;
     }
 
     /** Return true iff a jump is possible from the current board. */
     boolean jumpPossible() {
-        for (int k = 0; k <= MAX_INDEX; k += 1) {
-            if (jumpPossible(k)) {
-                return true;
-            }
+        return jumpers() != 0;
+    }
+
+    /** Return the mask of squares holding pieces of the player to move
+     *  that have at least one capture available. */
+    private int jumpers() {
+        int mine = pieces(_whoseMove),
+            opp = pieces(_whoseMove.opposite()),
+            empty = pieces(EMPTY);
+        int result;
+        result = 0;
+        for (int d = 0; d < ALL_NEIGHBORS.length; d += 1) {
+            int i = ALL_NEIGHBORS[d];
+            result |= mine & JUMPERS[d] & shift(opp, i) & shift(empty, i + i);
         }
-        return false;
+        return result;
     }
 
     /** Return the color of the player who has the next move.  The
@@ -345,69 +482,142 @@ class Board extends Observable {
     /** Make the Move MOV on this Board, assuming it is legal. */
     void makeMove(Move mov) {
         assert legalMove(mov);
-        _boardsStack.push(new Board(this));
-        if (mov.isJump()) {
-            makeJump(mov);
+        makeMove(mov.code());
+    }
+
+    /** Make the move encoded as MOVE (see Move) on this Board,
+     *  assuming it is legal. */
+    void makeMove(long move) {
+        Undo undo = pushUndo();
+        undo._key = _key;
+        undo._score = _score;
+        int white = _white, black = _black;
+        int from = Move.fromIndex(move), first;
+        set(from, EMPTY);
+        if (Move.numJumps(move) == 0) {
+            first = Move.toIndex(move);
         } else {
-            set(mov.fromIndex(), EMPTY);
-            set(mov.toIndex(), _whoseMove);
-        }
-        updateIllegalHorizontal(mov);
-        _whoseMove = _whoseMove.opposite();
-        _legalMoves = getMoves();
-        _gameOver = !isMove();
-        setChanged();
-        notifyObservers();
-    }
-
-    /** Updates illegal horizontal move after making move MOV. */
-    private void updateIllegalHorizontal(Move mov) {
-        for (int i = 0; i < _illegalHorWhite.size(); i++) {
-            if (get(_illegalHorWhite.get(i).fromIndex())
-                    == EMPTY) {
-                _illegalHorWhite.remove(i);
-            }
+            first = from + 2 * Move.jumpDirection(move, 0);
+            makeJump(move);
+        }
+        set(Move.toIndex(move), _whoseMove);
+        undo._whiteDelta = white ^ _white;
+        undo._blackDelta = black ^ _black;
+        undo._mover = _whoseMove;
+        updateRestrictions(from, first, undo);
+        setWhoseMove(_whoseMove.opposite());
+        _legalMoves = null;
+        changed(undo._whiteDelta | undo._blackDelta);
+    }
+
+    /** Updates the horizontal restrictions after making a move whose
+     *  first step or jump went from square FROM to square TO, recording
+     *  the changes in UNDO.  A restriction lasts while its square stays
+     *  occupied, and a sideways step forbids the piece from stepping
+     *  straight back. */
+    private void updateRestrictions(int from, int to, Undo undo) {
+        int occupied = _white | _black;
+        for (PieceColor c : PIECE_COLORS) {
+            int i = c.ordinal();
+            undo._noLeftDelta[i] = _noLeft[i] & ~occupied;
+            undo._noRightDelta[i] = _noRight[i] & ~occupied;
         }
-        for (int i = 0; i < _illegalHorBlack.size(); i++) {
-            if (get(_illegalHorBlack.get(i).fromIndex())
-                    == EMPTY) {
-                _illegalHorBlack.remove(i);
+        if (row(from) == row(to) && abs(to - from) == 1) {
+            int i = _whoseMove.ordinal();
+            if (to > from) {
+                undo._noLeftDelta[i] |= bit(to);
+            } else {
+                undo._noRightDelta[i] |= bit(to);
             }
         }
-        if (!(mov.isLeftMove() || mov.isRightMove())) {
-            return;
+        int changed;
+        changed = 0;
+        for (PieceColor c : PIECE_COLORS) {
+            int i = c.ordinal();
+            changed |= undo._noLeftDelta[i] | undo._noRightDelta[i];
         }
-        Move newIllegalMove = move(mov.col1(), mov.row1(),
-                mov.col0(), mov.row0());
-        if (_whoseMove == WHITE) {
-            _illegalHorWhite.add(newIllegalMove);
+        _score -= squareScores(changed);
+        for (PieceColor c : PIECE_COLORS) {
+            int i = c.ordinal();
+            _noLeft[i] ^= undo._noLeftDelta[i];
+            _noRight[i] ^= undo._noRightDelta[i];
+            _key ^= restrictionKeys(c, 0, undo._noLeftDelta[i])
+                ^ restrictionKeys(c, 1, undo._noRightDelta[i]);
+        }
+        _score += squareScores(changed);
+    }
+
+    /** Remove all horizontal restrictions. */
+    private void clearRestrictions() {
+        int restricted;
+        restricted = 0;
+        for (PieceColor c : PIECE_COLORS) {
+            restricted |= _noLeft[c.ordinal()] | _noRight[c.ordinal()];
+        }
+        _score -= squareScores(restricted);
+        for (PieceColor c : PIECE_COLORS) {
+            int i = c.ordinal();
+            _key ^= restrictionKeys(c, 0, _noLeft[i])
+                ^ restrictionKeys(c, 1, _noRight[i]);
+            _noLeft[i] = _noRight[i] = 0;
+        }
+        _score += squareScores(restricted);
+    }
+
+    /** Return true iff the player to move may not step from square FROM
+     *  to square TO because it would reverse that piece's last sideways
+     *  step. */
+    private boolean isRestricted(int from, int to) {
+        if (to == from - 1) {
+            return (_noLeft[_whoseMove.ordinal()] & bit(from)) != 0;
+        } else if (to == from + 1) {
+            return (_noRight[_whoseMove.ordinal()] & bit(from)) != 0;
         } else {
-            _illegalHorBlack.add(newIllegalMove);
+            return false;
         }
     }
 
-    /** Make the jump helper for makeMove. Performing MOV
-     *  in which MOV is a jump*/
-    private void makeJump(Move mov) {
-        set(mov.fromIndex(), EMPTY);
-        while (true) {
-            set(mov.jumpedIndex(), EMPTY);
-            if (mov.jumpTail() == null) {
-                set(mov.toIndex(), _whoseMove);
-                break;
-            }
-            mov = mov.jumpTail();
+    /** Return the mask of squares holding pieces of player C that may not
+     *  step left, because their last move was a step to the right. */
+    int noLeft(PieceColor c) {
+        return _noLeft[c.ordinal()];
+    }
+
+    /** Return the mask of squares holding pieces of player C that may not
+     *  step right, because their last move was a step to the left. */
+    int noRight(PieceColor c) {
+        return _noRight[c.ordinal()];
+    }
+
+    /** Make the jump helper for makeMove: remove the pieces captured by
+     *  the jump sequence encoded as MOVE. */
+    private void makeJump(long move) {
+        int k = Move.fromIndex(move);
+        for (int j = 0; j < Move.numJumps(move); j += 1) {
+            int i = Move.jumpDirection(move, j);
+            set(k + i, EMPTY);
+            k += i + i;
         }
     }
 
     /** Undo the last move, if any. */
     void undo() {
-        if (_boardsStack.empty()) {
+        if (_numUndos == 0) {
             return;
         }
-        internalCopy(_boardsStack.pop());
-        setChanged();
-        notifyObservers();
+        _numUndos -= 1;
+        Undo undo = _undos.get(_numUndos);
+        _white ^= undo._whiteDelta;
+        _black ^= undo._blackDelta;
+        _key = undo._key;
+        _score = undo._score;
+        _whoseMove = undo._mover;
+        for (PieceColor c : PIECE_COLORS) {
+            _noLeft[c.ordinal()] ^= undo._noLeftDelta[c.ordinal()];
+            _noRight[c.ordinal()] ^= undo._noRightDelta[c.ordinal()];
+        }
+        _legalMoves = null;
+        changed(undo._whiteDelta | undo._blackDelta);
     }
 
     @Override
@@ -439,17 +649,18 @@ class Board extends Observable {
         return out.toString();
     }
 
+    /** Return true iff O is a Board holding the same position as mine:
+     *  the same pieces, player to move, and horizontal restrictions.
+     *  Undo histories are not compared. */
     @Override
     public boolean equals(Object o) {
         if (o instanceof Board) {
-            Board b = (Board) o;
-            return (b.toString().equals(toString())
-                    && _whoseMove == b.whoseMove()
-                    && _gameOver == b.gameOver()
-                    && _legalMoves.equals(b._legalMoves)
-                    && _illegalHorBlack.equals(b._illegalHorBlack)
-                    && _illegalHorWhite.equals(b._illegalHorWhite)
-                    && _boardsStack.equals(b._boardsStack));
+            Board b = ((Board) o).source();
+            return _key == b._key
+                && _white == b._white && _black == b._black
+                && _whoseMove == b._whoseMove
+                && Arrays.equals(_noLeft, b._noLeft)
+                && Arrays.equals(_noRight, b._noRight);
         } else {
             return false;
         }
@@ -457,77 +668,294 @@ class Board extends Observable {
 
     @Override
     public int hashCode() {
-        throw new UnsupportedOperationException();
+        return Long.hashCode(_key);
     }
 
-    /** Return true iff there is a move for the current player. */
+    /** Return true iff there is a move for the current player.  Stops
+     *  at the first move found, without building a list of moves. */
     private boolean isMove() {
-        return _legalMoves.size() > 0;
+        if (jumpers() != 0) {
+            return true;
+        }
+        int empty = pieces(EMPTY);
+        for (int m = pieces(_whoseMove); m != 0; m &= m - 1) {
+            int k = Integer.numberOfTrailingZeros(m);
+            for (int to : STEP_TARGETS[_whoseMove.ordinal()][k]) {
+                if ((empty & bit(to)) != 0 && !isRestricted(k, to)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
 
-    /** Array representing the board, pieces in linearized index. */
-    private PieceColor[] _board = new PieceColor[MAX_INDEX + 1];
+    /** Masks of the squares holding white and black pieces.  Bit K of
+     *  each is set iff the square with linearized index K holds a piece
+     *  of that color. */
+    private int _white, _black;
+
+    /** The Zobrist hash of the current position. */
+    private long _key;
+
+    /** The value of the current position (see score()). */
+    private int _score;
 
     /** Player that is on move. */
     private PieceColor _whoseMove;
 
-    /** Set true when game ends. */
-    private boolean _gameOver;
-
-    /** ArrayList storing all legal moves. */
+    /** ArrayList storing all legal moves, or null if they have not been
+     *  computed since the last change to the position. */
     private ArrayList<Move> _legalMoves;
 
     /** Return ArrayList that sores all legal moves for this board. */
     ArrayList<Move> getLegalMoves() {
+        if (_legalMoves == null) {
+            _legalMoves = getMoves();
+        }
         ArrayList<Move> result = new ArrayList<>();
         result.addAll(_legalMoves);
         return result;
     }
 
-    /** Stack of all the boards. */
-    private Stack<Board> _boardsStack;
+    /** Add LISTENER to the objects notified of changes to me.  Copies of
+     *  me start with no listeners, so that boards used for searching pay
+     *  nothing for notifications. */
+    void addListener(BoardListener listener) {
+        _listeners.add(listener);
+    }
 
-    /** List storing illegal horizontal moves for white. */
-    private ArrayList<Move> _illegalHorWhite;
+    /** Remove LISTENER from the objects notified of changes to me. */
+    void removeListener(BoardListener listener) {
+        _listeners.remove(listener);
+    }
 
-    /** Function to return illegal horizontal white moves. */
-    ArrayList<Move> getIllegalHorWhite() {
-        ArrayList<Move> result = new ArrayList<>();
-        result.addAll(_illegalHorWhite);
-        return result;
+    /** Begin a group of changes that listeners are to be told about in a
+     *  single notification when the matching call to endChanges comes.
+     *  Groups may nest; only the outermost group notifies. */
+    void beginChanges() {
+        _changeDepth += 1;
     }
 
-    /** List storing illegal horizontal moves for black. */
-    private ArrayList<Move> _illegalHorBlack;
+    /** End a group of changes begun by beginChanges, notifying listeners
+     *  if this ends the outermost group and anything changed. */
+    void endChanges() {
+        assert _changeDepth > 0;
+        _changeDepth -= 1;
+        if (_changeDepth == 0 && _changesPending) {
+            notifyListeners();
+        }
+    }
 
-    /** Function to return illegal horizontal black moves. */
-    ArrayList<Move> getIllegalHorBlack() {
-        ArrayList<Move> result = new ArrayList<>();
-        result.addAll(_illegalHorBlack);
-        return result;
+    /** Record that the squares in the mask SQUARES have changed,
+     *  notifying listeners unless a group of changes is in progress. */
+    private void changed(int squares) {
+        if (_listeners.isEmpty()) {
+            return;
+        }
+        _changedSquares |= squares;
+        _changesPending = true;
+        if (_changeDepth == 0) {
+            notifyListeners();
+        }
+    }
+
+    /** Tell all listeners about the pending changes. */
+    private void notifyListeners() {
+        BoardChange change =
+            new BoardChange(this, _changedSquares, _whoseMove, gameOver());
+        _changedSquares = 0;
+        _changesPending = false;
+        for (BoardListener listener : _listeners) {
+            listener.boardChanged(change);
+        }
+    }
+
+    /** The objects notified of changes to me. */
+    private final CopyOnWriteArrayList<BoardListener> _listeners =
+        new CopyOnWriteArrayList<>();
+
+    /** Depth of nesting of beginChanges calls. */
+    private int _changeDepth;
+
+    /** True iff there are changes that listeners have not been told
+     *  about. */
+    private boolean _changesPending;
+
+    /** Mask of squares changed since listeners were last notified. */
+    private int _changedSquares;
+
+    /** Return an undo record for a new move, pushed on top of the
+     *  undo stack.  Records are reused, so that the stack allocates only
+     *  when it grows beyond its previous maximum depth. */
+    private Undo pushUndo() {
+        if (_numUndos == _undos.size()) {
+            _undos.add(new Undo());
+        }
+        Undo undo = _undos.get(_numUndos);
+        _numUndos += 1;
+        return undo;
     }
 
+
+    /** Undo records for the moves made on this board, of which the
+     *  first _numUndos are in use, most recent last. */
+    private ArrayList<Undo> _undos = new ArrayList<>();
+
+    /** Number of moves that may currently be undone. */
+    private int _numUndos;
+
+    /** _noLeft[C.ordinal()] and _noRight[C.ordinal()] are the masks of
+     *  squares holding pieces of player C that may not step left or
+     *  right, respectively, because that would reverse their last move. */
+    private final int[] _noLeft = new int[PieceColor.values().length],
+        _noRight = new int[PieceColor.values().length];
+
     /** Convenience array for getting all neighbors of any square. */
-    private int[] _allNeighbors = {-6, -5, -4, -1, 1, 4, 5, 6};
+    private static final int[] ALL_NEIGHBORS = Move.DIRECTIONS;
 
-    /** Helper function for finding legal non-capturing moves
-     *  at K, returning boolean of whether square I index
-     *  difference is possible. */
-    private boolean isPossibleMove(int k, int i) {
-        if (!isValidNeighbor(k, i)) {
-            return false;
+    /** The colors of actual pieces. */
+    private static final PieceColor[] PIECE_COLORS = { WHITE, BLACK };
+
+    /** Mask of all squares on the board. */
+    static final int ALL_SQUARES = (1 << (MAX_INDEX + 1)) - 1;
+
+    /** STEP_TARGETS[C.ordinal()][K] lists the squares to which a piece
+     *  of color C at square K may make a non-capturing move, disregarding
+     *  occupancy and the horizontal-move restriction, in the order of
+     *  ALL_NEIGHBORS. */
+    private static final int[][][] STEP_TARGETS =
+        new int[PieceColor.values().length][MAX_INDEX + 1][];
+
+    /** JUMP_PAIRS[K] lists the captures starting at square K as
+     *  consecutive pairs: the square jumped over, then the square
+     *  landed on, in the order of ALL_NEIGHBORS. */
+    private static final int[][] JUMP_PAIRS = new int[MAX_INDEX + 1][];
+
+    /** JUMP_DIRECTIONS[K][J] is the index in ALL_NEIGHBORS of the
+     *  direction of the jump described by JUMP_PAIRS[K][2 * J] and
+     *  JUMP_PAIRS[K][2 * J + 1]. */
+    private static final int[][] JUMP_DIRECTIONS = new int[MAX_INDEX + 1][];
+
+    /** JUMPERS[D] is the mask of squares from which a capture in the
+     *  direction ALL_NEIGHBORS[D] stays on the board. */
+    private static final int[] JUMPERS = new int[ALL_NEIGHBORS.length];
+
+    /** PIECE_KEYS[C.ordinal()][K] is the Zobrist key component for a
+     *  piece of color C on square K. */
+    private static final long[][] PIECE_KEYS =
+        new long[PieceColor.values().length][MAX_INDEX + 1];
+
+    /** RESTRICTION_KEYS[C.ordinal()][K][D] is the Zobrist key component
+     *  for a restriction forbidding player C's piece on square K from
+     *  moving left (D == 0) or right (D == 1). */
+    private static final long[][][] RESTRICTION_KEYS =
+        new long[PieceColor.values().length][MAX_INDEX + 1][2];
+
+    /** SQUARE_VALUES[C.ordinal()][R][K] is the contribution to score()
+     *  of a piece of color C on square K that is free to step sideways
+     *  (R == FREE), may not step left (R == NO_LEFT), or may not step
+     *  right (R == NO_RIGHT). */
+    private static final int[][][] SQUARE_VALUES =
+        new int[PieceColor.values().length][3][MAX_INDEX + 1];
+
+    /** Indices in SQUARE_VALUES for the horizontal restrictions. */
+    private static final int FREE = 0, NO_LEFT = 1, NO_RIGHT = 2;
+
+    /** Value of each row a piece has yet to advance. */
+    private static final int ROW_VALUE = 4;
+
+    /** Zobrist key component present iff black is to move. */
+    private static final long BLACK_TO_MOVE_KEY;
+
+    /** Seed for the Zobrist keys.  Keys are the same on every run, so
+     *  that they may be stored in files. */
+    private static final long ZOBRIST_SEED = 0x5172_6b61_7451_6972L;
+
+    static {
+        Random keys = new Random(ZOBRIST_SEED);
+        for (PieceColor c : PIECE_COLORS) {
+            for (int k = 0; k <= MAX_INDEX; k += 1) {
+                PIECE_KEYS[c.ordinal()][k] = keys.nextLong();
+                RESTRICTION_KEYS[c.ordinal()][k][0] = keys.nextLong();
+                RESTRICTION_KEYS[c.ordinal()][k][1] = keys.nextLong();
+            }
         }
-        if (_whoseMove == WHITE) {
-            if (i == -6 || i == -5 || i == -4) {
-                return false;
+        BLACK_TO_MOVE_KEY = keys.nextLong();
+    }
+
+    /** Return the Zobrist key components for restrictions forbidding
+     *  player C's pieces on the squares in MASK from moving left (D == 0)
+     *  or right (D == 1). */
+    private static long restrictionKeys(PieceColor c, int d, int mask) {
+        long result;
+        result = 0;
+        for (; mask != 0; mask &= mask - 1) {
+            result ^= RESTRICTION_KEYS[c.ordinal()]
+                [Integer.numberOfTrailingZeros(mask)][d];
+        }
+        return result;
+    }
+
+    static {
+        for (int k = 0; k <= MAX_INDEX; k += 1) {
+            int[] white = new int[ALL_NEIGHBORS.length],
+                black = new int[ALL_NEIGHBORS.length],
+                jumps = new int[2 * ALL_NEIGHBORS.length],
+                dirs = new int[ALL_NEIGHBORS.length];
+            int numWhite, numBlack, numJumps;
+            numWhite = numBlack = numJumps = 0;
+            for (int d = 0; d < ALL_NEIGHBORS.length; d += 1) {
+                int i = ALL_NEIGHBORS[d];
+                if (!isValidNeighbor(k, i)) {
+                    continue;
+                }
+                if (row(k) != '5' && i > -4) {
+                    white[numWhite] = k + i;
+                    numWhite += 1;
+                }
+                if (row(k) != '1' && i < 4) {
+                    black[numBlack] = k + i;
+                    numBlack += 1;
+                }
+                if (isValidNeighbor(k + i, i)) {
+                    jumps[numJumps] = k + i;
+                    jumps[numJumps + 1] = k + i + i;
+                    dirs[numJumps / 2] = d;
+                    numJumps += 2;
+                    JUMPERS[d] |= bit(k);
+                }
             }
-        } else {
-            if (i == 6 || i == 5 || i == 4) {
-                return false;
+            STEP_TARGETS[WHITE.ordinal()][k] = Arrays.copyOf(white, numWhite);
+            STEP_TARGETS[BLACK.ordinal()][k] = Arrays.copyOf(black, numBlack);
+            STEP_TARGETS[EMPTY.ordinal()][k] = new int[0];
+            int r = row(k) - '0', c = col(k) - 'a' + 1;
+            int[][] whiteValues = SQUARE_VALUES[WHITE.ordinal()],
+                blackValues = SQUARE_VALUES[BLACK.ordinal()];
+            if (r != SIDE) {
+                whiteValues[FREE][k] = (SIDE + 1 - r) * ROW_VALUE;
+                whiteValues[NO_LEFT][k] = whiteValues[FREE][k] - (c - 1);
+                whiteValues[NO_RIGHT][k] = whiteValues[FREE][k] - (SIDE - c);
+            }
+            if (r != 1) {
+                blackValues[FREE][k] = -r * ROW_VALUE;
+                blackValues[NO_LEFT][k] = blackValues[FREE][k] + (c - 1);
+                blackValues[NO_RIGHT][k] = blackValues[FREE][k] + (SIDE - c);
             }
+            JUMP_PAIRS[k] = Arrays.copyOf(jumps, numJumps);
+            JUMP_DIRECTIONS[k] = Arrays.copyOf(dirs, numJumps / 2);
         }
-        return true;
+    }
+
+    /** Return the mask containing only square K. */
+    private static int bit(int k) {
+        return 1 << k;
+    }
+
+    /** Return the mask of squares K such that square K + I is in MASK,
+     *  for -2 * SIDE < I < 2 * SIDE. */
+    private static int shift(int mask, int i) {
+        return i >= 0 ? mask >>> i : (mask << -i) & ALL_SQUARES;
     }
 
     /** Helper function for finding valid neighbors
@@ -576,40 +1004,241 @@ class Board extends Observable {
         return (i % 2 == 0);
     }
 
-    /** A read-only view of a Board. */
-    private class ConstantBoard extends Board implements Observer {
+    /** The changes made to a Board by one move: just enough to put the
+     *  Board back as it was before the move. */
+    private static class Undo {
+
+        /** An empty record. */
+        Undo() {
+        }
+
+        /** A copy of U. */
+        Undo(Undo u) {
+            _key = u._key;
+            _score = u._score;
+            _whiteDelta = u._whiteDelta;
+            _blackDelta = u._blackDelta;
+            _mover = u._mover;
+            System.arraycopy(u._noLeftDelta, 0, _noLeftDelta, 0,
+                             _noLeftDelta.length);
+            System.arraycopy(u._noRightDelta, 0, _noRightDelta, 0,
+                             _noRightDelta.length);
+        }
+
+        /** The Zobrist key of the position before the move. */
+        private long _key;
+        /** The score() of the position before the move. */
+        private int _score;
+        /** Masks of the squares whose white and black occupancy the move
+         *  changed. */
+        private int _whiteDelta, _blackDelta;
+        /** The player who made the move. */
+        private PieceColor _mover;
+        /** Masks of the changes the move made to _noLeft and _noRight. */
+        private final int[] _noLeftDelta = new int[PieceColor.values().length],
+            _noRightDelta = new int[PieceColor.values().length];
+    }
+
+    /** A read-only view of a Board.  A view holds no position of its
+     *  own: every access method consults the Board it views, so that the
+     *  view is current at no cost when that Board changes, and every
+     *  method that would modify it throws UnsupportedOperationException.
+     *  Access methods must therefore all be overridden here. */
+    private class ConstantBoard extends Board {
         /** A constant view of this Board. */
         ConstantBoard() {
-            super(Board.this);
-            Board.this.addObserver(this);
+            super((Void) null);
         }
 
         @Override
-        void copy(Board b) {
-            assert false;
+        Board source() {
+            return Board.this;
+        }
+
+        @Override
+        Board constantView() {
+            return this;
         }
 
         @Override
         void clear() {
-            assert false;
+            throw readOnly();
+        }
+
+        @Override
+        void copy(Board b) {
+            throw readOnly();
+        }
+
+        @Override
+        void setPieces(String str, PieceColor nextMove) {
+            throw readOnly();
+        }
+
+        @Override
+        void setPieces(int white, int black, int noLeft, int noRight,
+                       PieceColor nextMove) {
+            throw readOnly();
+        }
+
+        @Override
+        boolean gameOver() {
+            return Board.this.gameOver();
+        }
+
+        @Override
+        PieceColor get(char c, char r) {
+            return Board.this.get(c, r);
+        }
+
+        @Override
+        PieceColor get(int k) {
+            return Board.this.get(k);
+        }
+
+        @Override
+        int pieces(PieceColor c) {
+            return Board.this.pieces(c);
+        }
+
+        @Override
+        int numPieces(PieceColor c) {
+            return Board.this.numPieces(c);
+        }
+
+        @Override
+        long key() {
+            return Board.this.key();
+        }
+
+        @Override
+        int score() {
+            return Board.this.score();
+        }
+
+        @Override
+        boolean legalMove(Move mov) {
+            return Board.this.legalMove(mov);
+        }
+
+        @Override
+        ArrayList<Move> getMoves() {
+            return Board.this.getMoves();
+        }
+
+        @Override
+        void getMoves(ArrayList<Move> moves) {
+            Board.this.getMoves(moves);
         }
 
         @Override
-        void makeMove(Move move) {
-            assert false;
+        void getMoves(MoveList moves) {
+            Board.this.getMoves(moves);
+        }
+
+        @Override
+        ArrayList<Move> getLegalMoves() {
+            return Board.this.getLegalMoves();
+        }
+
+        @Override
+        boolean checkJump(Move mov, boolean allowPartial) {
+            return Board.this.checkJump(mov, allowPartial);
+        }
+
+        @Override
+        boolean jumpPossible(char c, char r) {
+            return Board.this.jumpPossible(c, r);
+        }
+
+        @Override
+        boolean jumpPossible(int k) {
+            return Board.this.jumpPossible(k);
+        }
+
+        @Override
+        boolean jumpPossible() {
+            return Board.this.jumpPossible();
+        }
+
+        @Override
+        PieceColor whoseMove() {
+            return Board.this.whoseMove();
+        }
+
+        @Override
+        void makeMove(char c0, char r0, char c1, char r1) {
+            throw readOnly();
+        }
+
+        @Override
+        void makeMove(char c0, char r0, char c1, char r1, Move next) {
+            throw readOnly();
+        }
+
+        @Override
+        void makeMove(Move mov) {
+            throw readOnly();
+        }
+
+        @Override
+        void makeMove(long move) {
+            throw readOnly();
+        }
+
+        @Override
+        int noLeft(PieceColor c) {
+            return Board.this.noLeft(c);
+        }
+
+        @Override
+        int noRight(PieceColor c) {
+            return Board.this.noRight(c);
         }
 
-        /** Undo the last move. */
         @Override
         void undo() {
-            assert false;
+            throw readOnly();
         }
 
         @Override
-        public void update(Observable obs, Object arg) {
-            super.copy((Board) obs);
-            setChanged();
-            notifyObservers(arg);
+        String toString(boolean legend) {
+            return Board.this.toString(legend);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return Board.this.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return Board.this.hashCode();
+        }
+
+        @Override
+        void addListener(BoardListener listener) {
+            Board.this.addListener(listener);
+        }
+
+        @Override
+        void removeListener(BoardListener listener) {
+            Board.this.removeListener(listener);
+        }
+
+        @Override
+        void beginChanges() {
+            throw readOnly();
+        }
+
+        @Override
+        void endChanges() {
+            throw readOnly();
+        }
+
+        /** Return the exception thrown by attempts to modify me. */
+        private UnsupportedOperationException readOnly() {
+            return new UnsupportedOperationException("board is read-only");
         }
     }
 }
@@ -0,0 +1,57 @@
+package qirkat;
+
+/** A description of one or more changes to a Board, as delivered to a
+ *  BoardListener.  When several changes are coalesced into one
+ *  notification, the changed squares accumulate and the remaining
+ *  properties describe the Board after the last of them.
+ *  @author Chris Sreesangkom
+ */
+class BoardChange {
+
+    /** A change to BOARD in which the squares in the mask SQUARES
+     *  changed, leaving WHOSEMOVE to move, with the game over iff
+     *  GAMEOVER. */
+    BoardChange(Board board, int squares, PieceColor whoseMove,
+                boolean gameOver) {
+        _board = board;
+        _squares = squares;
+        _whoseMove = whoseMove;
+        _gameOver = gameOver;
+    }
+
+    /** Return the Board that changed. */
+    Board board() {
+        return _board;
+    }
+
+    /** Return the mask of squares whose contents may have changed, in
+     *  which bit K stands for the square with linearized index K. */
+    int squares() {
+        return _squares;
+    }
+
+    /** Return true iff the contents of the square with linearized index
+     *  K may have changed. */
+    boolean changed(int k) {
+        return (_squares & (1 << k)) != 0;
+    }
+
+    /** Return the player to move after the change. */
+    PieceColor whoseMove() {
+        return _whoseMove;
+    }
+
+    /** Return true iff the game is over after the change. */
+    boolean gameOver() {
+        return _gameOver;
+    }
+
+    /** The Board that changed. */
+    private final Board _board;
+    /** Mask of changed squares. */
+    private final int _squares;
+    /** The player to move afterwards. */
+    private final PieceColor _whoseMove;
+    /** True iff the game is over afterwards. */
+    private final boolean _gameOver;
+}
@@ -0,0 +1,14 @@
+package qirkat;
+
+/** An object that is told about changes to a Board.  Listeners replace
+ *  java.util.Observer for Boards: they receive a description of what
+ *  changed rather than having to re-examine the whole Board.
+ *  @author Chris Sreesangkom
+ */
+interface BoardListener {
+
+    /** Respond to CHANGE, which describes all changes to its Board
+     *  since the previous notification. */
+    void boardChanged(BoardChange change);
+
+}
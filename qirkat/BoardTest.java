@@ -63,6 +63,95 @@ public class BoardTest {
         assertEquals("copy failed to return to start", b1, b2);
     }
 
+    @Test
+    public void testUndoRestrictions() {
+        Board b0 = new Board();
+        b0.setPieces("----- -w--- ----- ----- ----b", PieceColor.WHITE);
+        Board b1 = new Board(b0);
+        b0.makeMove(Move.parseMove("b2-a2"));
+        b0.makeMove(Move.parseMove("e5-e4"));
+        int a2 = 1 << Move.index('a', '2');
+        assertEquals(a2, b0.noRight(PieceColor.WHITE));
+        b0.makeMove(Move.parseMove("a2-a3"));
+        assertEquals(0, b0.noRight(PieceColor.WHITE));
+        b0.undo();
+        assertEquals(a2, b0.noRight(PieceColor.WHITE));
+        assertEquals(0, b0.noLeft(PieceColor.WHITE));
+        b0.undo();
+        b0.undo();
+        assertEquals("failed to restore restrictions", b1, b0);
+    }
+
+    @Test
+    public void testKey() {
+        Board b0 = new Board();
+        long start = b0.key();
+        b0.makeMove(Move.parseMove("c2-c3"));
+        b0.makeMove(Move.parseMove("c4-c2"));
+        Board b1 = new Board();
+        b1.setPieces("wwwww wwbww bb-ww bb-bb bbbbb", PieceColor.WHITE);
+        assertEquals("incremental key differs from fresh key",
+                     b1.key(), b0.key());
+        assertEquals(b1, b0);
+        assertEquals(b1.hashCode(), b0.hashCode());
+        b1.setPieces("wwwww wwbww bb-ww bb-bb bbbbb", PieceColor.BLACK);
+        assertNotEquals("key ignores player to move", b1.key(), b0.key());
+        b0.undo();
+        b0.undo();
+        assertEquals("undo failed to restore key", start, b0.key());
+    }
+
+    @Test
+    public void testListeners() {
+        Board b0 = new Board();
+        ArrayList<BoardChange> changes = new ArrayList<>();
+        b0.addListener(changes::add);
+        makeMoves(b0, GAME1);
+        assertEquals(GAME1.length, changes.size());
+        assertTrue(changes.get(0).changed(Move.index('c', '2')));
+        assertFalse(changes.get(0).changed(Move.index('a', '1')));
+        assertEquals(PieceColor.BLACK, changes.get(0).whoseMove());
+        changes.clear();
+        b0.beginChanges();
+        for (int i = 0; i < GAME1.length; i += 1) {
+            b0.undo();
+        }
+        assertEquals("notified inside a group", 0, changes.size());
+        b0.endChanges();
+        assertEquals("group not coalesced", 1, changes.size());
+        assertEquals(PieceColor.WHITE, changes.get(0).whoseMove());
+        changes.clear();
+        Board b1 = new Board(b0);
+        makeMoves(b1, GAME1);
+        assertEquals("copy kept listeners", 0, changes.size());
+    }
+
+    @Test
+    public void testConstantView() {
+        Board b0 = new Board();
+        Board view = b0.constantView();
+        makeMoves(b0, GAME1);
+        assertEquals(b0.toString(), view.toString());
+        assertEquals(b0.key(), view.key());
+        assertEquals(b0, view);
+        assertEquals(view, b0);
+        assertEquals(b0, new Board(view));
+        try {
+            view.undo();
+            fail("view allowed undo");
+        } catch (UnsupportedOperationException excp) {
+            /* Expected. */
+        }
+        try {
+            view.makeMove(view.getMoves().get(0));
+            fail("view allowed move");
+        } catch (UnsupportedOperationException excp) {
+            /* Expected. */
+        }
+        b0.clear();
+        assertEquals(new Board().toString(), view.toString());
+    }
+
     @Test
     public void testClear() {
         Board b0 = new Board();
@@ -136,6 +225,30 @@ public class BoardTest {
         assertEquals(b3.toString(), b2.toString());
     }
 
+    @Test
+    public void testScore() {
+        Board b0 = new Board();
+        assertEquals(0, b0.score());
+        b0.setPieces("----- -w--- ----- ----- ----b", PieceColor.WHITE);
+        assertEquals(16 - 20, b0.score());
+        b0.makeMove(Move.parseMove("b2-a2"));
+        assertEquals(16 - 4 - 20, b0.score());
+        b0.makeMove(Move.parseMove("e5-e4"));
+        b0.makeMove(Move.parseMove("a2-a3"));
+        assertEquals(12 - 16, b0.score());
+        b0.makeMove(Move.parseMove("e4-e3"));
+        b0.makeMove(Move.parseMove("a3-b3"));
+        assertEquals(12 - 1 - 12, b0.score());
+        assertEquals(b0.score(), new Board(b0).score());
+        assertEquals(b0.score(), b0.constantView().score());
+        b0.undo();
+        assertEquals(12 - 12, b0.score());
+        b0.setPieces("w---- ----- ----- ----- ----b", PieceColor.WHITE);
+        assertEquals(20 - 20, b0.score());
+        b0.setPieces("----w ----- ----- ----- b----", PieceColor.WHITE);
+        assertEquals(0, b0.score());
+    }
+
     @Test
     public void isValidNeighborTest() {
         assertFalse("Right edge neighbor fail", Board.isValidNeighbor(19, 1));
@@ -6,8 +6,6 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.BasicStroke;
 import java.util.ArrayList;
-import java.util.Observer;
-import java.util.Observable;
 
 import java.awt.event.MouseEvent;
 import static qirkat.PieceColor.*;
@@ -15,7 +13,7 @@ import static qirkat.PieceColor.*;
 /** Widget for displaying a Qirkat board.
  *  @author Chris Sreesangkom
  */
-class BoardWidget extends Pad implements Observer {
+class BoardWidget extends Pad implements BoardListener {
 
     /** Length of side of one square, in pixels. */
     static final int SQDIM = 50;
@@ -59,7 +57,7 @@ class BoardWidget extends Pad implements Observer {
     BoardWidget(Board model) {
         _model = model;
         setMouseHandler("click", this::readMove);
-        _model.addObserver(this);
+        _model.addListener(this);
         _dim = SQDIM * SIDE;
         setPreferredSize(_dim, _dim);
     }
@@ -168,7 +166,7 @@ class BoardWidget extends Pad implements Observer {
     }
 
     @Override
-    public synchronized void update(Observable model, Object arg) {
+    public synchronized void boardChanged(BoardChange change) {
         repaint();
     }
 
@@ -25,6 +25,12 @@ class Command {
         PIECEMOVE("([a-e][1-5](?:-[a-e][1-5])+)"),
         /* Valid at any time. */
         LOAD("load\\s+(\\S+)"),
+        TIME("time\\s+(\\d+(?:\\.\\d*)?|off)"),
+        THREADS("threads\\s+(\\d+)"),
+        OPTION("option\\s+([-a-z]+)\\s+(on|off|\\d+)"),
+        PONDER("ponder\\s+(on|off)"),
+        TABLEBASE("tablebase\\s+(\\S+)"),
+        BOOK("book\\s+(\\S+)"),
         QUIT, CLEAR, DUMP, HELP, UNDO,
         /* Special "commands" internally generated. */
         /** Syntax error in command. */
@@ -45,6 +45,51 @@ public class CommandTest {
         checkError("seed 142 foo");
     }
 
+    @Test public void testTIME() {
+        check("time 5", TIME, "5");
+        check("time 0.25", TIME, "0.25");
+        check("time off", TIME, "off");
+        checkError("time");
+        checkError("time -1");
+        checkError("time 5 foo");
+    }
+
+    @Test public void testTHREADS() {
+        check("threads 8", THREADS, "8");
+        checkError("threads");
+        checkError("threads x");
+        checkError("threads 8 foo");
+    }
+
+    @Test public void testOPTION() {
+        check("option lmr off", OPTION, "lmr", "off");
+        check("option futility-margin 12", OPTION, "futility-margin", "12");
+        check("option quiescence-depth 0", OPTION, "quiescence-depth", "0");
+        checkError("option lmr");
+        checkError("option lmr -1");
+        checkError("option lmr on off");
+    }
+
+    @Test public void testPONDER() {
+        check("ponder on", PONDER, "on");
+        check("ponder off", PONDER, "off");
+        checkError("ponder");
+        checkError("ponder maybe");
+    }
+
+    @Test public void testTABLEBASE() {
+        check("tablebase qirkat.tb", TABLEBASE, "qirkat.tb");
+        check("tablebase off", TABLEBASE, "off");
+        checkError("tablebase");
+    }
+
+    @Test public void testBOOK() {
+        check("book qirkat.book", BOOK, "qirkat.book");
+        check("book on", BOOK, "on");
+        check("book off", BOOK, "off");
+        checkError("book");
+    }
+
     @Test public void testSTART() {
         check("start", START);
         checkError("start foo");
@@ -0,0 +1,88 @@
+package qirkat;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** A fixed-size table of the static values of positions, indexed by the
+ *  positions' Zobrist keys (see Board.key).  A new value simply replaces
+ *  whatever occupied its slot.  Each entry is a data word holding the
+ *  value and a check word, the exclusive or of the key and the data
+ *  word; see TranspositionTable for how that lets threads share it.
+ *  @author Chris Sreesangkom
+ */
+class EvalCache {
+
+    /** The result of get for a position not in the table. */
+    static final long MISSING = Long.MIN_VALUE;
+
+    /** A table of 2 ** BITS entries. */
+    EvalCache(int bits) {
+        _bits = bits;
+        _mask = (1 << bits) - 1;
+        _table = new long[(_mask + 1) * ENTRY_SIZE];
+    }
+
+    /** Return the log base 2 of my number of entries. */
+    int bits() {
+        return _bits;
+    }
+
+    /** Return the value recorded for the position whose key is KEY, or
+     *  MISSING if there is none. */
+    long get(long key) {
+        int i = slot(key);
+        long data = _table[i];
+        if ((_table[i + 1] ^ data) == key && data != 0) {
+            _hits.increment();
+            return (int) data;
+        }
+        _misses.increment();
+        return MISSING;
+    }
+
+    /** Record that the position whose key is KEY has value VALUE. */
+    void put(long key, int value) {
+        long data = VALID | (value & VALUE_MASK);
+        int i = slot(key);
+        _table[i] = data;
+        _table[i + 1] = key ^ data;
+    }
+
+    /** Return the number of calls to get that found a value. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return the number of calls to get that found none. */
+    long misses() {
+        return _misses.sum();
+    }
+
+    /** Return the index in _table of the entry for KEY. */
+    private int slot(long key) {
+        return ((int) key & _mask) * ENTRY_SIZE;
+    }
+
+    /** Number of longs in an entry. */
+    private static final int ENTRY_SIZE = 2;
+
+    /** Mask for the value field of a data word. */
+    private static final long VALUE_MASK = 0xffffffffL;
+
+    /** Bit set in every data word in use. */
+    private static final long VALID = 1L << 63;
+
+    /** The entries, each as ENTRY_SIZE consecutive longs (data word,
+     *  check word). */
+    private final long[] _table;
+
+    /** Log base 2 of the number of entries. */
+    private final int _bits;
+
+    /** Mask giving an entry number from a key. */
+    private final int _mask;
+
+    /** Counts of calls to get that found and did not find a value. */
+    private final LongAdder
+        _hits = new LongAdder(),
+        _misses = new LongAdder();
+}
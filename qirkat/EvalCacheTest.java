@@ -0,0 +1,30 @@
+package qirkat;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the EvalCache class.
+ *  @author Chris Sreesangkom
+ */
+public class EvalCacheTest {
+
+    /** Keys that fall in the same entry of a small table. */
+    private static final long
+        KEY1 = 0x1234_5678_0000_0003L,
+        KEY2 = 0x8765_4321_0000_0013L;
+
+    @Test
+    public void testGetPut() {
+        EvalCache cache = new EvalCache(4);
+        assertEquals(EvalCache.MISSING, cache.get(KEY1));
+        assertEquals(EvalCache.MISSING, cache.get(0));
+        cache.put(KEY1, -17);
+        assertEquals(-17, cache.get(KEY1));
+        assertEquals(EvalCache.MISSING, cache.get(KEY2));
+        cache.put(KEY2, 0);
+        assertEquals(0, cache.get(KEY2));
+        assertEquals(EvalCache.MISSING, cache.get(KEY1));
+        assertEquals(2, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+}
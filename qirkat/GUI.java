@@ -26,10 +26,10 @@ class GUI extends TopLevel implements Observer, Reporter {
      * unnecessary as possible for the rest of the program to know that it
      * is interacting with a GUI as opposed to a terminal.
      *
-     * To this end, we first have made Board observable, so that the
-     * GUI gets notified of changes to a Game's board and can interrogate
-     * it as needed, while the Game and Board themselves need not be aware
-     * that it is being watched.
+     * To this end, we first have made Board report its changes to
+     * listeners, so that the GUI gets notified of changes to a Game's
+     * board and can interrogate it as needed, while the Game and Board
+     * themselves need not be aware that it is being watched.
      *
      * Second, instead of creating a new API by which the GUI communicates
      * with a Game, we instead simply arrange to make the GUI's input look
@@ -75,7 +75,6 @@ class GUI extends TopLevel implements Observer, Reporter {
                            "ibottom", 5));
         setMinimumSize(MIN_SIZE, MIN_SIZE);
         _widget.addObserver(this);
-        _model.addObserver(this);
         _setPiecesWindow = new SetPiecesWindow(_out);
         _whiteIsManual = true;
         _blackIsManual = false;
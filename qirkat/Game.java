@@ -7,6 +7,7 @@ import java.io.InputStreamReader;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.EnumMap;
 import java.util.Formatter;
 import java.util.HashMap;
 import java.util.Random;
@@ -34,6 +35,9 @@ class Game {
         _board = board;
         _constBoard = _board.constantView();
         _reporter = reporter;
+        for (AI.Option option : AI.Option.values()) {
+            _options.put(option, option.defaultValue());
+        }
     }
 
     /** Run a session of Qirkat gaming. */
@@ -77,6 +81,9 @@ class Game {
                 }
             }
 
+            white.endGame();
+            black.endGame();
+
             if (_state == PLAYING) {
                 reportWinner();
             }
@@ -124,6 +131,37 @@ class Game {
         return null;
     }
 
+    /** Return the time limit for each move by an AI, in milliseconds,
+     *  or 0 if there is none. */
+    long timeLimit() {
+        return _timeLimit;
+    }
+
+    /** Return the number of threads each AI is to search with. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Return the opening book for AIs to use, or null if none. */
+    OpeningBook openingBook() {
+        return _useBook ? _book : null;
+    }
+
+    /** Return the endgame tablebase for AIs to use, or null if none. */
+    Tablebase tablebase() {
+        return _tablebase;
+    }
+
+    /** Return true iff AIs are to search on their opponents' time. */
+    boolean pondering() {
+        return _pondering;
+    }
+
+    /** Return the value of the search option OPTION for AIs. */
+    int option(AI.Option option) {
+        return _options.get(option);
+    }
+
     /** Return random integer between 0 (inclusive) and MAX>0 (exclusive). */
     int nextRandom(int max) {
         return _randoms.nextInt(max);
@@ -227,8 +265,10 @@ class Game {
 
     /** Perform undo. */
     void doUndo(String[] unused) {
+        _board.beginChanges();
         _board.undo();
         _board.undo();
+        _board.endChanges();
     }
 
     /** Perform the command 'clear'. */
@@ -267,6 +307,100 @@ class Game {
         }
     }
 
+    /** Execute 'time OPERANDS[0]' command, where the operand is a
+     *  number of seconds or "off". */
+    void doTime(String[] operands) {
+        if (operands[0].equals("off")) {
+            _timeLimit = 0;
+        } else {
+            _timeLimit =
+                Math.max(1, Math.round(Double.parseDouble(operands[0])
+                                       * MILLIS_PER_SECOND));
+        }
+    }
+
+    /** Execute 'threads OPERANDS[0]' command, where the operand is a
+     *  string of decimal digits. */
+    void doThreads(String[] operands) {
+        int threads;
+        try {
+            threads = Integer.parseInt(operands[0]);
+        } catch (NumberFormatException e) {
+            threads = 0;
+        }
+        if (threads < 1 || threads > MAX_THREADS) {
+            throw error("Number of threads must be from 1 to %d",
+                        MAX_THREADS);
+        }
+        _threads = threads;
+    }
+
+    /** Execute 'book OPERANDS[0]' command, where the operand is "off",
+     *  "on" (to use the last book opened, or DEFAULT_BOOK if none), or
+     *  the name of an opening book file (see OpeningBook) to use. */
+    void doBook(String[] operands) {
+        if (operands[0].equals("off")) {
+            _useBook = false;
+            return;
+        }
+        String name = operands[0].equals("on") ? DEFAULT_BOOK : operands[0];
+        if (_book == null || !operands[0].equals("on")) {
+            try {
+                _book = new OpeningBook(name);
+            } catch (IOException excp) {
+                throw error("Cannot open book %s", name);
+            }
+        }
+        _useBook = true;
+    }
+
+    /** Execute 'tablebase OPERANDS[0]' command, where the operand is the
+     *  name of a tablebase file (see Tablebase) or "off". */
+    void doTablebase(String[] operands) {
+        if (operands[0].equals("off")) {
+            _tablebase = null;
+        } else {
+            try {
+                _tablebase = new Tablebase(operands[0]);
+            } catch (IOException excp) {
+                throw error("Cannot open tablebase %s", operands[0]);
+            }
+        }
+    }
+
+    /** Execute 'ponder OPERANDS[0]' command, where the operand is "on"
+     *  or "off". */
+    void doPonder(String[] operands) {
+        _pondering = operands[0].equals("on");
+    }
+
+    /** Execute 'option OPERANDS[0] OPERANDS[1]' command, where the first
+     *  operand names a search option and the second is "on", "off", or a
+     *  string of decimal digits. */
+    void doOption(String[] operands) {
+        AI.Option option = AI.Option.find(operands[0]);
+        if (option == null) {
+            throw error("Unknown option %s", operands[0]);
+        }
+        int value;
+        switch (operands[1]) {
+        case "on":
+            value = 1;
+            break;
+        case "off":
+            value = 0;
+            break;
+        default:
+            try {
+                value = Integer.parseInt(operands[1]);
+            } catch (NumberFormatException e) {
+                throw error("Option value %s is too large", operands[1]);
+            }
+            break;
+        }
+        _options.put(option, value);
+    }
+
     /** Execute the artificial 'error' command. */
     void doError(String[] unused) {
         throw error("Command not understood");
@@ -298,6 +432,12 @@ class Game {
         _commands.put(SETBOARD, this::doSet);
         _commands.put(START, this::doStart);
         _commands.put(LOAD, this::doLoad);
+        _commands.put(TIME, this::doTime);
+        _commands.put(THREADS, this::doThreads);
+        _commands.put(OPTION, this::doOption);
+        _commands.put(PONDER, this::doPonder);
+        _commands.put(TABLEBASE, this::doTablebase);
+        _commands.put(BOOK, this::doBook);
         _commands.put(QUIT, this::doQuit);
         _commands.put(UNDO, this::doUndo);
         _commands.put(ERROR, this::doError);
@@ -317,4 +457,30 @@ class Game {
     private Reporter _reporter;
     /** Source of pseudo-random numbers (used by AIs). */
     private Random _randoms = new Random();
+    /** Time limit for each move by an AI, in milliseconds, or 0 if
+     *  there is none. */
+    private long _timeLimit;
+    /** Number of threads each AI searches with. */
+    private int _threads = 1;
+    /** The last opening book opened, or null if none. */
+    private OpeningBook _book;
+    /** True iff AIs use _book. */
+    private boolean _useBook;
+    /** Endgame tablebase used by AIs, or null if none. */
+    private Tablebase _tablebase;
+    /** True iff AIs search on their opponents' time. */
+    private boolean _pondering;
+    /** Values of the search options for AIs. */
+    private final EnumMap<AI.Option, Integer> _options =
+        new EnumMap<>(AI.Option.class);
+
+    /** Name of the opening book file used by 'book on' if no other
+     *  has been opened. */
+    private static final String DEFAULT_BOOK = "qirkat.book";
+
+    /** Maximum number of threads an AI may search with. */
+    private static final int MAX_THREADS = 256;
+
+    /** Number of milliseconds in a second. */
+    private static final double MILLIS_PER_SECOND = 1000.0;
 }
@@ -85,6 +85,15 @@ public class Main {
         }
     }
 
+    /** Report statistics about an operation formed from FORMAT and
+     *  ARGS as for String.format, if timing. */
+    static void reportStats(String format, Object... args) {
+        if (_timing) {
+            System.err.printf(format, args);
+            System.err.println();
+        }
+    }
+
     /** Report total time statistics, if timing. */
     static void reportTotalTimes() {
         if (_timing && _numTimedOps > 0) {
@@ -1,14 +1,14 @@
 package qirkat;
 
 import static java.lang.Math.abs;
-import java.util.Formatter;
-import java.util.HashMap;
-import java.util.function.Function;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-
-/** Represents a Qirkat move. There is one Move object created for
- *  each distinct Move.  A "vestigial" move represents a single board
+import java.nio.CharBuffer;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Represents a Qirkat move.  Moves are immutable, and are compared
+ *  by value.  A "vestigial" move represents a single board
  *  position, as opposed to a move (its starting and ending rows are
  *  equal, likewise columns).
  *  @author Chris Sreesangkom
@@ -27,69 +27,116 @@ class Move {
         STEP_R = 5,
         INDEX_ORIGIN = -('a' * STEP_C + '1' * STEP_R);
 
-    /** Pattern for valid move input. */
-    private static final Pattern MOVE_PATTERN =
-        Pattern.compile("(?:.*-)?([a-e])([1-5])-([a-e])([1-5])$");
-
-    /** Patter for valid square input for vestigial move. */
-    private static final Pattern SQ_PATTERN =
-            Pattern.compile("(?:.*-)?([a-e])([1-5])");
+    /** Length of the denotation of a single leg, such as "a1-b2". */
+    private static final int LEG_LENGTH = 5;
 
     /* Moves get generated profligately during the calculations of an AI,
      * so it's a good idea to make that operation efficient.  Instead of
      * relying on a Move constructor, which does a memory allocation with
      * each use of 'new', we use a "Move factory": Move.move,
      * a static method that returns a Move, but not necessarily a new
-     * one. Moves themselves are immutable, and for any possible move,
-     * there is exactly one object of type Move. */
-
-    /* To avoid creating Move objects that are not needed, we maintain a
-     * a static variable, _staged containing a Move object.  The move
-     * factory methods then sets the fields of this object before looking to
-     * to see if there is already a Move object with the same parameters.
-     * If there is, the move methods will simply return it, thus allowing
-     * _staged to be reused on the next call without having to create a
-     * new Move object.  Otherwise, we use the _staged object itself as the
-     * new Move, and set the variable to null so that we create a new
-     * Move on the next call to move. There is a drawback: since there
-     * is at most one _staged object at any time, at most one call to move
-     * may execute simultaneously.  Otherwise, two the methods may attempt
-     * to use the same Move object for two different Moves, which clearly
-     * will not work.  Therefore, we indicate in the comments that a number
-     * of the operations are not "thread safe". Fortunately, you'll not run
-     * into this problem as long as you don't do anything fancy (such as
-     * trying to make your AI a parallel program).
-     */
-
-    /** The move constructor, made private to prevent its use except in
-     *  this class. */
-    private Move() {
+     * one. */
+
+    /* Every single step or jump leg (a Move with no jump tail) is created
+     * once, when this class is initialized, in the table LEGS, which is
+     * never modified afterwards, so there is exactly one object for each
+     * of them.  Jump chains (a jump leg followed by a tail) are far too
+     * numerous to keep them all, so the most recently made ones are
+     * kept in the fixed-size table CHAINS, indexed by a hash of their
+     * encodings, each new chain replacing whatever shared its slot.  A
+     * chain may thus be represented by more than one object over time,
+     * and equals compares chains by value (by encoding, where there is
+     * one), but the memory taken by Moves never grows beyond the size of
+     * these tables.  Both tables are read and written without locks, so
+     * the factory methods may be called from any number of threads at
+     * once.  A race between two threads making the same chain at most
+     * creates an extra object. */
+
+    /** The Move from linearized index FROM to TO, followed by NEXTJUMP,
+     *  if this move is a jump, whose encoding is CODE. */
+    private Move(int from, int to, Move nextJump, long code) {
+        _col0 = col(from);
+        _row0 = row(from);
+        _col1 = col(to);
+        _row1 = row(to);
+        _fromIndex = (byte) from;
+        _toIndex = (byte) to;
+        _isJump = abs(_col0 - _col1) > 1 || abs(_row0 - _row1) > 1;
+        _nextJump = nextJump;
+        _code = code;
+        assert (_isJump
+                && (nextJump == null
+                    || (nextJump.isJump() && to == nextJump.fromIndex())))
+            || (!_isJump && nextJump == null);
     }
 
     /** A factory method that returns a Move from COL0 ROW0 to COL1 ROW1,
      *  followed by NEXTJUMP, if this move is a jump. Assumes the column
      *  and row designations are valid and that NEXTJUMP is null for a
-     *  non-capturing move.  Not thread-safe. */
+     *  non-capturing move.  Thread-safe. */
     static Move move(char col0, char row0, char col1, char row1,
                      Move nextJump) {
-        if (_staged == null) {
-            _staged = new Move();
-        }
-        _staged.set(col0, row0, col1, row1, nextJump);
-        if (_staged.isJump() && nextJump != null && !nextJump.isJump()) {
-            throw new IllegalArgumentException("bad jump");
-        } else if (!_staged.isJump() && nextJump != null) {
+        assert validSquare(col0, row0) && validSquare(col1, row1);
+        return move(index(col0, row0), index(col1, row1), nextJump);
+    }
+
+    /** Return the Move from linearized index FROM to TO, followed by
+     *  NEXTJUMP, as for move(col0, row0, col1, row1, nextJump).
+     *  Thread-safe. */
+    static Move move(int from, int to, Move nextJump) {
+        Move leg = LEGS[from][to];
+        if (nextJump == null) {
+            return leg;
+        } else if (!leg.isJump() || !nextJump.isJump()) {
             throw new IllegalArgumentException("bad jump");
         }
-        Move result = _internedMoves.computeIfAbsent(_staged, IDENTITY);
-        if (result == _staged) {
-            _staged = null;
+        long code = encodeLegs(from, to, nextJump);
+        if (code == NO_CODE) {
+            _chainMisses.increment();
+            return new Move(from, to, nextJump, code);
         }
-        return result;
+        int h = chainSlot(code);
+        Move result = CHAINS.get(h);
+        if (result != null && result._code == code) {
+            _chainHits.increment();
+            return result;
+        }
+        _chainMisses.increment();
+        Move chain = new Move(from, to, nextJump, code);
+        if (result != null) {
+            CHAINS.set(h, chain);
+        } else if (CHAINS.compareAndSet(h, null, chain)) {
+            _numChains.incrementAndGet();
+        }
+        return chain;
+    }
+
+    /** Return the number of jump chains currently held for reuse by the
+     *  factory methods, which is at most CHAIN_TABLE_SIZE. */
+    static int numChains() {
+        return _numChains.get();
+    }
+
+    /** Return the number of requests for jump chains that found the
+     *  chain in the table. */
+    static long chainHits() {
+        return _chainHits.sum();
+    }
+
+    /** Return the number of requests for jump chains that had to create
+     *  a new Move. */
+    static long chainMisses() {
+        return _chainMisses.sum();
+    }
+
+    /** Return the index in CHAINS of the chain encoded as CODE. */
+    private static int chainSlot(long code) {
+        return (int) ((code * 0x9e3779b97f4a7c15L)
+                      >>> (Long.SIZE - CHAIN_TABLE_BITS));
     }
 
     /** Return a single move or jump from (COL0, ROW0) to (COL1, ROW1).
-     *  Not thread-safe. */
+     *  Thread-safe. */
     static Move move(char col0, char row0, char col1, char row1) {
         return move(col0, row0, col1, row1, null);
     }
@@ -256,118 +303,329 @@ class Move {
         return _nextJump;
     }
 
+    /** Return my encoding as a long (see encode), or NO_CODE if I have
+     *  none. */
+    long code() {
+        return _code;
+    }
+
     @Override
     public int hashCode() {
-        return (_fromIndex << 5) | _toIndex;
+        return Long.hashCode(_code) ^ (_fromIndex << 5) ^ _toIndex;
     }
 
     @Override
     public boolean equals(Object obj) {
-        /* NOTE: Depends on there being no more than one Move object for
-         * each distinct move, so that pointer equality of _nextJump
-         * is valid. */
+        /* NOTE: An encoding determines the whole move.  Only moves with
+         * no encoding need their tails compared leg by leg. */
         Move m = (Move) obj;
-        return _fromIndex == m._fromIndex && _nextJump == m._nextJump
-            && _toIndex == m._toIndex;
+        return _code == m._code
+            && _fromIndex == m._fromIndex && _toIndex == m._toIndex
+            && (_code != NO_CODE || Objects.equals(_nextJump, m._nextJump));
     }
 
-    /** Return the non-vestigial Move denoted by STR. */
-    static Move parseMove(String str) {
-        Matcher mat = MOVE_PATTERN.matcher(str);
-        int end;
+    /* Encoded moves.  A move is encoded in a long as follows: bits 0-4
+     * hold the linearized index of the starting square, bits 5-9 that of
+     * the final square, and bits 10-14 the number of jumps (0 for a
+     * non-capturing move).  Jump I (from 0) is then described by 3 bits
+     * starting at bit 15 + 3 * I, giving the index in DIRECTIONS of its
+     * direction.  Encodings let the search and any tables or files handle
+     * moves as primitive values.  Every move that can be made on a Board
+     * has an encoding; a Move whose legs are not all steps or jumps
+     * between neighboring squares, or that has more than MAX_JUMPS jumps,
+     * has none. */
+
+    /** Index differences of the eight directions in which a jump may
+     *  proceed, in the order used in encodings. */
+    static final int[] DIRECTIONS = {-6, -5, -4, -1, 1, 4, 5, 6};
 
+    /** Maximum number of jumps in an encoded move. */
+    static final int MAX_JUMPS = 16;
+
+    /** The code() of a Move that has no encoding. */
+    static final long NO_CODE = -1;
+
+    /** Bit positions of the fields of an encoded move. */
+    private static final int
+        TO_SHIFT = 5,
+        JUMPS_SHIFT = 10,
+        LEGS_SHIFT = 15,
+        LEG_BITS = 3;
+
+    /** Masks for square and direction fields. */
+    private static final int SQUARE_MASK = 31, LEG_MASK = 7;
+
+    /** Return the encoding of the non-capturing move from square FROM to
+     *  square TO. */
+    static long step(int from, int to) {
+        return from | (long) to << TO_SHIFT;
+    }
+
+    /** Return the encoding of MOVE extended by a jump in direction
+     *  DIRECTIONS[DIR] from its final square.  If MOVE is a non-capturing
+     *  move from square K to itself, the result is the single jump from
+     *  K in that direction. */
+    static long extend(long move, int dir) {
+        int n = numJumps(move);
+        assert n < MAX_JUMPS;
+        int to = toIndex(move) + 2 * DIRECTIONS[dir];
+        return (move & ~((long) SQUARE_MASK << TO_SHIFT
+                         | (long) SQUARE_MASK << JUMPS_SHIFT))
+            | (long) to << TO_SHIFT
+            | (long) (n + 1) << JUMPS_SHIFT
+            | (long) dir << (LEGS_SHIFT + LEG_BITS * n);
+    }
+
+    /** Return the linearized index of the starting square of MOVE. */
+    static int fromIndex(long move) {
+        return (int) move & SQUARE_MASK;
+    }
+
+    /** Return the linearized index of the final square of MOVE. */
+    static int toIndex(long move) {
+        return (int) (move >>> TO_SHIFT) & SQUARE_MASK;
+    }
+
+    /** Return the number of jumps in MOVE, or 0 if it is non-capturing. */
+    static int numJumps(long move) {
+        return (int) (move >>> JUMPS_SHIFT) & SQUARE_MASK;
+    }
+
+    /** Return the index difference of the direction of jump K (from 0)
+     *  of MOVE, which must have more than K jumps. */
+    static int jumpDirection(long move, int k) {
+        return DIRECTIONS[jumpDirectionIndex(move, k)];
+    }
+
+    /** Return the index in DIRECTIONS of the direction of jump K (from 0)
+     *  of MOVE, which must have more than K jumps. */
+    private static int jumpDirectionIndex(long move, int k) {
+        return (int) (move >>> (LEGS_SHIFT + LEG_BITS * k)) & LEG_MASK;
+    }
+
+    /** Return the encoding of MOV, which must have one. */
+    static long encode(Move mov) {
+        assert mov.code() != NO_CODE;
+        return mov.code();
+    }
+
+    /** Return the Move encoded by MOVE. */
+    static Move decode(long move) {
+        int n = numJumps(move), from = fromIndex(move);
+        if (n == 0) {
+            return move(from, toIndex(move), null);
+        }
+        int[] squares = new int[n + 1];
+        squares[0] = from;
+        for (int k = 0; k < n; k += 1) {
+            squares[k + 1] = squares[k] + 2 * jumpDirection(move, k);
+        }
         Move result;
         result = null;
-        end = str.length();
+        for (int k = n - 1; k >= 0; k -= 1) {
+            result = move(squares[k], squares[k + 1], result);
+        }
+        return result;
+    }
 
-        while (end > 2) {
-            mat.region(0, end);
-            if (!mat.matches()) {
-                throw new IllegalArgumentException("bad move denotation");
+    /** Return the denotation of the move encoded by MOVE, as for
+     *  toString(). */
+    static String toString(long move) {
+        return appendTo(new StringBuilder(LEG_LENGTH), move).toString();
+    }
+
+    /** Append the denotation of the move encoded by MOVE to OUT,
+     *  returning OUT. */
+    static StringBuilder appendTo(StringBuilder out, long move) {
+        int k = fromIndex(move), n = numJumps(move);
+        out.append(col(k)).append(row(k));
+        if (n == 0) {
+            k = toIndex(move);
+            out.append('-').append(col(k)).append(row(k));
+        }
+        for (int j = 0; j < n; j += 1) {
+            k += 2 * jumpDirection(move, j);
+            out.append('-').append(col(k)).append(row(k));
+        }
+        return out;
+    }
+
+    /** Return the encoding of the Move from FROM to TO followed by
+     *  NEXTJUMP, or NO_CODE if it has none. */
+    private static long encodeLegs(int from, int to, Move nextJump) {
+        int r0 = from / SIDE, c0 = from % SIDE, r1 = to / SIDE,
+            c1 = to % SIDE;
+        if (abs(r1 - r0) <= 1 && abs(c1 - c0) <= 1) {
+            return nextJump == null ? step(from, to) : NO_CODE;
+        }
+        int dr = r1 - r0, dc = c1 - c0;
+        if ((dr != 0 && abs(dr) != 2) || (dc != 0 && abs(dc) != 2)
+            || (dr != 0 && dc != 0 && from % 2 == 1)) {
+            return NO_CODE;
+        }
+        int dir;
+        for (dir = 0; DIRECTIONS[dir] != (to - from) / 2; dir += 1) {
+            assert dir < DIRECTIONS.length - 1;
+        }
+        long result = extend(step(from, from), dir);
+        if (nextJump != null) {
+            long tail = nextJump.code();
+            int n = numJumps(tail);
+            if (tail == NO_CODE || n >= MAX_JUMPS) {
+                return NO_CODE;
+            }
+            for (int j = 0; j < n; j += 1) {
+                result = extend(result, jumpDirectionIndex(tail, j));
             }
+        }
+        return result;
+    }
+
+    /** Return the non-vestigial Move denoted by STR. */
+    static Move parseMove(CharSequence str) {
+        return parseMove(str, 0, str.length());
+    }
 
-            result = move(mat.group(1).charAt(0), mat.group(2).charAt(0),
-                          mat.group(3).charAt(0), mat.group(4).charAt(0),
+    /** Return the non-vestigial Move denoted by the characters of STR
+     *  from index START up to (but not including) END.  Denotations are
+     *  read from right to left in a single pass, one leg at a time, the
+     *  last leg first, so that each leg's tail is known when it is
+     *  interned.  Creates no objects other than new Moves. */
+    static Move parseMove(CharSequence str, int start, int end) {
+        Move result;
+        result = null;
+        if (end - start > 2 && hasLineTerminator(str, start, end)) {
+            throw new IllegalArgumentException("bad move denotation");
+        }
+        while (end - start > 2) {
+            if (end - start < LEG_LENGTH
+                || !isSquare(str, end - LEG_LENGTH)
+                || str.charAt(end - 3) != '-' || !isSquare(str, end - 2)
+                || (end - start > LEG_LENGTH
+                    && str.charAt(end - LEG_LENGTH - 1) != '-')) {
+                throw new IllegalArgumentException("bad move denotation");
+            }
+            result = move(str.charAt(end - LEG_LENGTH),
+                          str.charAt(end - LEG_LENGTH + 1),
+                          str.charAt(end - 2), str.charAt(end - 1),
                           result);
-            end = mat.end(2);
+            end -= 3;
         }
         if (result == null) {
             throw new IllegalArgumentException("bad move denotation");
         }
         return result;
     }
-    /** Return the vestigial Move denoted by SQR. */
-    static Move parseVestMove(String sqr) {
-        Matcher mat = SQ_PATTERN.matcher(sqr);
-        if (!mat.matches()) {
+
+    /** Return the vestigial Move denoted by SQR.  Anything up to and
+     *  including the last '-' in SQR is ignored. */
+    static Move parseVestMove(CharSequence sqr) {
+        int n = sqr.length();
+        if (n < 2 || !isSquare(sqr, n - 2)
+            || (n > 2 && (sqr.charAt(n - 3) != '-'
+                          || hasLineTerminator(sqr, 0, n)))) {
             throw new IllegalArgumentException("bad move denotation");
         }
-        return move(mat.group().charAt(0), mat.group().charAt(1));
+        return move(sqr.charAt(n - 2), sqr.charAt(n - 1));
+    }
 
+    /** Return true iff the two characters of STR starting at K denote a
+     *  square. */
+    private static boolean isSquare(CharSequence str, int k) {
+        return validSquare(str.charAt(k), str.charAt(k + 1));
+    }
+
+    /** Return true iff the characters of STR from START up to END
+     *  include a line terminator, which no denotation may contain. */
+    private static boolean hasLineTerminator(CharSequence str, int start,
+                                             int end) {
+        for (int k = start; k < end; k += 1) {
+            switch (str.charAt(k)) {
+            case '\n': case '\r': case '\u0085': case '\u2028':
+            case '\u2029':
+                return true;
+            default:
+                break;
+            }
+        }
+        return false;
     }
 
     @Override
     public String toString() {
-        Formatter out = new Formatter();
-        toString(out);
-        return out.toString();
-    }
-
-    /** Write my string representation into OUT. */
-    private void toString(Formatter out) {
-        out.format("%c%c-%c%c", col0(), row0(), col1(), row1());
-        Move next = jumpTail();
-        while (next != null) {
-            out.format("-%c%c", next.col1(), next.row1());
-            next = next.jumpTail();
+        return appendTo(new StringBuilder(LEG_LENGTH)).toString();
+    }
+
+    /** Append my denotation to OUT, returning OUT. */
+    StringBuilder appendTo(StringBuilder out) {
+        out.append(_col0).append(_row0).append('-')
+            .append(_col1).append(_row1);
+        for (Move next = _nextJump; next != null; next = next._nextJump) {
+            out.append('-').append(next._col1).append(next._row1);
         }
+        return out;
     }
 
-    /** Set me to COL0 ROW0 - COL1 ROW1 - NEXTJUMP. */
-    private void set(char col0, char row0, char col1, char row1,
-                     Move nextJump) {
-        assert col0 >= 'a' && row0 >= '1' && col1 >= 'a' && row1 >= '1'
-            && col0 <= 'e' && row0 <= '5' && col1 <= 'e' &&  row1 <= '5';
-        _col0 = col0;
-        _row0 = row0;
-        _col1 = col1;
-        _row1 = row1;
-        _fromIndex = (byte) index(col0, row0);
-        _toIndex = (byte) index(col1, row1);
-        _isJump = abs(col0 - col1) > 1 || abs(row0 - row1) > 1;
-        _nextJump = nextJump;
-        assert (_isJump
-                && (nextJump == null
-                    || (nextJump.isJump()
-                        && col1 == nextJump.col0()
-                        && row1 == nextJump.row0())))
-            || (!_isJump && nextJump == null);
+    /** Append my denotation to OUT, returning OUT.  OUT must have room
+     *  for it. */
+    CharBuffer appendTo(CharBuffer out) {
+        out.put(_col0).put(_row0).put('-').put(_col1).put(_row1);
+        for (Move next = _nextJump; next != null; next = next._nextJump) {
+            out.put('-').put(next._col1).put(next._row1);
+        }
+        return out;
     }
 
     /** Linearized indices. */
-    private byte _fromIndex, _toIndex;
+    private final byte _fromIndex, _toIndex;
 
     /** True iff move is a jump. */
-    private boolean _isJump;
+    private final boolean _isJump;
 
     /** From and to squares, or 0s if a pass. */
-    private char _col0, _row0, _col1, _row1;
+    private final char _col0, _row0, _col1, _row1;
 
     /** For a jump, the Move representing the jumps following the
      *  initial jump. */
-    private Move _nextJump;
+    private final Move _nextJump;
+
+    /** My encoding, or NO_CODE. */
+    private final long _code;
 
     /* Used for the Move factory. */
 
-    /** Holds the next Move object to be added to _internedMoves.
-     *  The factory method move tentatively fills it in, and then returns
-     *  it if it is unique (resetting _staged to null). */
-    private static Move _staged;
+    /** LEGS[FROM][TO] is the Move from linearized index FROM to TO with
+     *  no jump tail. */
+    private static final Move[][] LEGS =
+        new Move[MAX_INDEX + 1][MAX_INDEX + 1];
+
+    /** Log base 2 of CHAIN_TABLE_SIZE. */
+    private static final int CHAIN_TABLE_BITS = 14;
+
+    /** Number of slots in CHAINS. */
+    static final int CHAIN_TABLE_SIZE = 1 << CHAIN_TABLE_BITS;
 
-    /** The set of all distinct moves generated so far. */
-    private static HashMap<Move, Move> _internedMoves = new HashMap<>();
+    /** Recently made jump chains, each at the slot given by chainSlot of
+     *  its encoding, or null. */
+    private static final AtomicReferenceArray<Move> CHAINS =
+        new AtomicReferenceArray<>(CHAIN_TABLE_SIZE);
 
-    /** The identity function on Moves. */
-    static final Function<Move, Move> IDENTITY = k -> k;
+    /** Number of non-null slots in CHAINS. */
+    private static final AtomicInteger _numChains = new AtomicInteger();
+
+    /** Counts of requests for jump chains that did and did not find them
+     *  in CHAINS. */
+    private static final LongAdder
+        _chainHits = new LongAdder(),
+        _chainMisses = new LongAdder();
+
+    static {
+        for (int from = 0; from <= MAX_INDEX; from += 1) {
+            for (int to = 0; to <= MAX_INDEX; to += 1) {
+                LEGS[from][to] =
+                    new Move(from, to, null, encodeLegs(from, to, null));
+            }
+        }
+    }
 
 }
@@ -0,0 +1,88 @@
+package qirkat;
+
+/** A reusable list of moves, each encoded as a long, together with an
+ *  integer score for each move that may be used to order them.  A
+ *  MoveList allocates only when it must grow, so a search that keeps one
+ *  list per ply generates moves without creating garbage.  See Move for
+ *  the encoding.
+ *  @author Chris Sreesangkom
+ */
+class MoveList {
+
+    /** Initial capacity of a MoveList. */
+    private static final int INITIAL_CAPACITY = 32;
+
+    /** An empty MoveList. */
+    MoveList() {
+        _moves = new long[INITIAL_CAPACITY];
+        _scores = new int[INITIAL_CAPACITY];
+    }
+
+    /** Remove all moves from me. */
+    void clear() {
+        _size = 0;
+    }
+
+    /** Return the number of moves in me. */
+    int size() {
+        return _size;
+    }
+
+    /** Return my Kth move. */
+    long get(int k) {
+        assert k < _size;
+        return _moves[k];
+    }
+
+    /** Return the score of my Kth move. */
+    int score(int k) {
+        assert k < _size;
+        return _scores[k];
+    }
+
+    /** Set the score of my Kth move to SCORE. */
+    void setScore(int k, int score) {
+        assert k < _size;
+        _scores[k] = score;
+    }
+
+    /** Add MOVE, with score 0, to the end of me. */
+    void add(long move) {
+        if (_size == _moves.length) {
+            long[] moves = new long[2 * _size];
+            int[] scores = new int[2 * _size];
+            System.arraycopy(_moves, 0, moves, 0, _size);
+            System.arraycopy(_scores, 0, scores, 0, _size);
+            _moves = moves;
+            _scores = scores;
+        }
+        _moves[_size] = move;
+        _scores[_size] = 0;
+        _size += 1;
+    }
+
+    /** Sort my moves in order of decreasing score.  The sort is stable,
+     *  so moves with equal scores keep their relative order. */
+    void sort() {
+        for (int i = 1; i < _size; i += 1) {
+            long move = _moves[i];
+            int score = _scores[i];
+            int j;
+            for (j = i; j > 0 && _scores[j - 1] < score; j -= 1) {
+                _moves[j] = _moves[j - 1];
+                _scores[j] = _scores[j - 1];
+            }
+            _moves[j] = move;
+            _scores[j] = score;
+        }
+    }
+
+    /** The encoded moves. */
+    private long[] _moves;
+
+    /** The scores of the corresponding moves. */
+    private int[] _scores;
+
+    /** Number of moves currently in me. */
+    private int _size;
+}
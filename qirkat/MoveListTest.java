@@ -0,0 +1,32 @@
+package qirkat;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static qirkat.Move.*;
+
+/** Tests of the MoveList class.
+ *  @author Chris Sreesangkom
+ */
+public class MoveListTest {
+
+    @Test
+    public void testSort() {
+        MoveList list = new MoveList();
+        for (int k = 0; k < MAX_INDEX; k += 1) {
+            list.add(step(k, k + 1));
+            list.setScore(k, k % 3);
+        }
+        assertEquals(MAX_INDEX, list.size());
+        list.sort();
+        for (int k = 1; k < list.size(); k += 1) {
+            assertTrue("not sorted", list.score(k - 1) >= list.score(k));
+            if (list.score(k - 1) == list.score(k)) {
+                assertTrue("not stable", fromIndex(list.get(k - 1))
+                           < fromIndex(list.get(k)));
+            }
+        }
+        list.clear();
+        assertEquals(0, list.size());
+    }
+}
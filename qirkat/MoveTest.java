@@ -3,6 +3,7 @@
 package qirkat;
 
 import org.junit.Test;
+import java.nio.CharBuffer;
 import static org.junit.Assert.*;
 
 import static qirkat.Move.*;
@@ -42,6 +43,41 @@ public class MoveTest {
         assertEquals("a3-a5-c3-e1", parseMove("a3-a5-c3-e1").toString());
     }
 
+    @Test
+    public void testParseErrors() {
+        String[] bad = { "", "a3", "a3-", "a3b2", "a3-b2-", "xa3-b2",
+                         "-a3-b2", "a3-f2", "a3-b2\n", "a3-a5-c3-e9" };
+        for (String s : bad) {
+            try {
+                parseMove(s);
+                fail("accepted " + s);
+            } catch (IllegalArgumentException excp) {
+                assertEquals("bad move denotation", excp.getMessage());
+            }
+        }
+        try {
+            parseMove("a1-a2-a3");
+            fail("accepted a1-a2-a3");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("bad jump", excp.getMessage());
+        }
+        assertEquals(parseMove("a3-a5-c3"),
+                     parseMove("xx a3-a5-c3 yy", 3, 11));
+        assertSame(move('c', '3'), parseVestMove("c3"));
+    }
+
+    @Test
+    public void testAppendTo() {
+        Move m = parseMove("a3-a5-c3-e1");
+        StringBuilder out = new StringBuilder("move ");
+        assertEquals("move a3-a5-c3-e1", m.appendTo(out).toString());
+        out.setLength(0);
+        assertEquals("a3-a5-c3-e1", appendTo(out, m.code()).toString());
+        CharBuffer buf = CharBuffer.allocate(20);
+        m.appendTo(buf).flip();
+        assertEquals("a3-a5-c3-e1", buf.toString());
+    }
+
     @Test
     public void testIsLeftAndIsRightMove() {
         Move left = move('b', '1', 'a', '1');
@@ -71,6 +107,67 @@ public class MoveTest {
                 notJump.toIndex(), notJump.jumpedIndex());
     }
 
+    @Test
+    public void testChainTable() {
+        Move m = parseMove("a1-c3-e5-e3");
+        long hits = chainHits(), misses = chainMisses();
+        assertEquals(m, parseMove("a1-c3-e5-e3"));
+        assertEquals(hits + 2, chainHits());
+        assertEquals(misses, chainMisses());
+        assertTrue(numChains() > 0 && numChains() <= CHAIN_TABLE_SIZE);
+        assertFalse(m.equals(parseMove("a1-c3-e5-c5")));
+        assertFalse(m.equals(parseMove("a1-c3-e5")));
+    }
+
+    @Test
+    public void testConcurrentInterning() throws InterruptedException {
+        final String[] chains = {
+            "a1-c3-e5", "a1-c3-e1", "a1-c3-a5-c5", "e5-c3-a1-a3-c5",
+        };
+        final Move[][] found = new Move[4][chains.length];
+        Thread[] threads = new Thread[found.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            final Move[] mine = found[t];
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < chains.length; i += 1) {
+                    mine[i] = parseMove(chains[i]);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < chains.length; i += 1) {
+            assertEquals(chains[i], found[0][i].toString());
+            for (int t = 1; t < found.length; t += 1) {
+                assertEquals(found[0][i], found[t][i]);
+            }
+            assertEquals(found[0][i], parseMove(chains[i]));
+        }
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        String[] moves = { "a3-b2", "c1-c2", "a3-a5", "a3-a5-c3-e1",
+                           "c1-c3-e3-e1-c1" };
+        for (String s : moves) {
+            Move m = parseMove(s);
+            long code = encode(m);
+            assertEquals(m.fromIndex(), fromIndex(code));
+            assertEquals("decoding does not give the same move",
+                       m, decode(code));
+        }
+        long code = encode(parseMove("a3-a5-c3-e1"));
+        assertEquals(3, numJumps(code));
+        assertEquals(index('e', '1'), toIndex(code));
+        assertEquals(0, numJumps(encode(parseMove("a3-b2"))));
+        assertEquals("a3-a5-c3-e1", Move.toString(code));
+        assertEquals("c1-c2", Move.toString(parseMove("c1-c2").code()));
+        assertEquals(NO_CODE, move('a', '1', 'e', '5').code());
+        assertEquals(NO_CODE, move('b', '1', 'd', '3').code());
+    }
+
     @Test
     public void testConcatMove() {
         Move m1 = move('a', '1', 'a', '2');
@@ -0,0 +1,221 @@
+package qirkat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/** An opening book: for positions near the start of the game, moves to
+ *  make from them, each with a weight giving how often to choose it
+ *  and the value found for it by the search that built the book.  A
+ *  book file holds MAGIC, the number of entries, and then the entries,
+ *  ENTRY_SIZE bytes each: the key of the position (see Board.key), the
+ *  encoding of the move (see Move), the weight, and the value, for the
+ *  player to move.  The entries are sorted by key, so that the file can
+ *  be mapped into memory and searched directly.
+ *  @author Chris Sreesangkom
+ */
+class OpeningBook {
+
+    /** Build an opening book for the first ARGS[0] moves from the
+     *  initial position, searching the position after each move ARGS[1]
+     *  levels deep, and write it to the file named ARGS[2].  Every move
+     *  from each position in the book is searched; those whose values
+     *  are within MARGIN of the best go into the book, the better ones
+     *  with greater weights, and the positions they lead to are added in
+     *  turn. */
+    public static void main(String[] args) {
+        int plies, depth;
+        plies = depth = 0;
+        if (args.length == 3 && args[0].matches("\\d{1,9}")
+            && args[1].matches("\\d{1,9}")) {
+            plies = Integer.parseInt(args[0]);
+            depth = Integer.parseInt(args[1]);
+        }
+        if (depth < 1 || depth > AI.MAX_TIMED_DEPTH) {
+            System.err.printf("Usage: java qirkat.OpeningBook PLIES DEPTH FILE,"
+                              + " where 1 <= DEPTH <= %d%n",
+                              AI.MAX_TIMED_DEPTH);
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        ArrayList<long[]> entries = build(plies, depth);
+        try {
+            write(args[2], entries);
+        } catch (IOException excp) {
+            System.err.printf("Could not write %s.%n", args[2]);
+            System.exit(1);
+        }
+        HashSet<Long> positions = new HashSet<>();
+        for (long[] entry : entries) {
+            positions.add(entry[0]);
+        }
+        System.out.printf("%d moves from %d positions written to %s in %d"
+                          + " msec.%n", entries.size(), positions.size(),
+                          args[2], System.currentTimeMillis() - start);
+    }
+
+    /** The opening book in the file named FILENAME, which is mapped into
+     *  memory rather than read. */
+    OpeningBook(String fileName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            if (file.length() < HEADER_SIZE || file.readInt() != MAGIC) {
+                throw new IOException("not an opening book");
+            }
+            int size = file.readInt();
+            if (size < 0
+                || file.length() != HEADER_SIZE + (long) size * ENTRY_SIZE) {
+                throw new IOException("bad opening book");
+            }
+            _size = size;
+            _data = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                                          HEADER_SIZE,
+                                          (long) size * ENTRY_SIZE);
+        }
+    }
+
+    /** Return my number of entries. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the index of my first entry for the position whose key is
+     *  KEY, or -1 if there is none.  The others follow it. */
+    int find(long key) {
+        int low, high;
+        low = 0;
+        high = _size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < _size && key(low) == key ? low : -1;
+    }
+
+    /** Return the key of the position of my entry #K. */
+    long key(int k) {
+        return _data.getLong(k * ENTRY_SIZE);
+    }
+
+    /** Return the encoding of the move of my entry #K. */
+    long move(int k) {
+        return _data.getLong(k * ENTRY_SIZE + MOVE_OFFSET);
+    }
+
+    /** Return the weight of my entry #K, which is positive. */
+    int weight(int k) {
+        return _data.getInt(k * ENTRY_SIZE + WEIGHT_OFFSET);
+    }
+
+    /** Return the value of my entry #K for the player to move. */
+    int score(int k) {
+        return _data.getInt(k * ENTRY_SIZE + SCORE_OFFSET);
+    }
+
+    /** Return the entries of an opening book for the first PLIES moves
+     *  from the initial position, searching DEPTH levels deep after each
+     *  move, as for main.  Each entry is a key, move, weight, and value,
+     *  in order of key. */
+    static ArrayList<long[]> build(int plies, int depth) {
+        Board board = new Board();
+        Game game = new Game(board, (prompt) -> null, new TextReporter());
+        AI ai = new AI(game, board.whoseMove());
+        ArrayList<long[]> entries = new ArrayList<>();
+        ArrayDeque<Board> queue = new ArrayDeque<>();
+        HashSet<Long> seen = new HashSet<>();
+        queue.add(new Board(board));
+        seen.add(board.key());
+        MoveList moves = new MoveList();
+        for (int ply = 0; ply < plies && !queue.isEmpty(); ply += 1) {
+            for (int n = queue.size(); n > 0; n -= 1) {
+                Board position = queue.remove();
+                moves.clear();
+                position.getMoves(moves);
+                int best = -Integer.MAX_VALUE;
+                for (int i = 0; i < moves.size(); i += 1) {
+                    position.makeMove(moves.get(i));
+                    int score = position.gameOver() ? Integer.MAX_VALUE - 1
+                        : searchValue(ai, position, depth);
+                    position.undo();
+                    moves.setScore(i, score);
+                    best = Math.max(best, score);
+                }
+                moves.sort();
+                for (int i = 0; i < moves.size(); i += 1) {
+                    int score = moves.score(i);
+                    if (best - (long) score > MARGIN) {
+                        break;
+                    }
+                    long move = moves.get(i);
+                    entries.add(new long[] {
+                        position.key(), move,
+                        MARGIN + 1 - (best - score), score
+                    });
+                    position.makeMove(move);
+                    if (!position.gameOver() && seen.add(position.key())) {
+                        queue.add(new Board(position));
+                    }
+                    position.undo();
+                }
+            }
+        }
+        entries.sort((e0, e1) -> Long.compare(e0[0], e1[0]));
+        return entries;
+    }
+
+    /** Return the value of the position on BOARD for the player who just
+     *  moved, as found by AI searching DEPTH levels deep. */
+    private static int searchValue(AI ai, Board board, int depth) {
+        ai.search(board, depth);
+        return -ai.searchScore();
+    }
+
+    /** Write an opening book file named FILENAME containing ENTRIES,
+     *  each a key, move, weight, and value, in order of key. */
+    static void write(String fileName, ArrayList<long[]> entries)
+        throws IOException {
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                                      new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (long[] entry : entries) {
+                out.writeLong(entry[0]);
+                out.writeLong(entry[1]);
+                out.writeInt((int) entry[2]);
+                out.writeInt((int) entry[3]);
+            }
+        }
+    }
+
+    /** Largest difference between the value of a move in the book and
+     *  that of the best move from the same position. */
+    private static final int MARGIN = 4;
+
+    /** First word of an opening book file ("QOB1"). */
+    private static final int MAGIC = 0x514f_4231;
+
+    /** Number of bytes in an opening book file before the entries. */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    /** Number of bytes in an entry, and the offsets of its fields after
+     *  the key. */
+    private static final int ENTRY_SIZE = 24, MOVE_OFFSET = 8,
+        WEIGHT_OFFSET = 16, SCORE_OFFSET = 20;
+
+    /** My number of entries. */
+    private final int _size;
+
+    /** My entries. */
+    private final ByteBuffer _data;
+}
@@ -0,0 +1,103 @@
+package qirkat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static qirkat.PieceColor.*;
+
+/** Tests of the OpeningBook class.
+ *  @author Chris Sreesangkom
+ */
+public class OpeningBookTest {
+
+    /** A small book, written to a temporary file and mapped back. */
+    private static OpeningBook book() throws IOException {
+        File file = File.createTempFile("qirkat", ".book");
+        file.deleteOnExit();
+        ArrayList<long[]> entries = OpeningBook.build(4, 2);
+        OpeningBook.write(file.getPath(), entries);
+        OpeningBook book = new OpeningBook(file.getPath());
+        assertEquals(entries.size(), book.size());
+        return book;
+    }
+
+    @Test
+    public void testFind() throws IOException {
+        OpeningBook book = book();
+        boolean duplicates = false;
+        for (int k = 0; k < book.size(); k += 1) {
+            int first = book.find(book.key(k));
+            assertTrue(first != -1 && first <= k);
+            assertEquals(book.key(k), book.key(first));
+            assertTrue(first == 0 || book.key(first - 1) != book.key(k));
+            assertTrue(book.weight(k) > 0);
+            if (first < k) {
+                duplicates = true;
+            }
+        }
+        assertTrue(duplicates);
+        Board b = new Board();
+        assertNotEquals(-1, book.find(b.key()));
+        b.setPieces(1, 2, 0, 0, WHITE);
+        assertEquals(-1, book.find(b.key()));
+    }
+
+    /** An AI ignores entries of a corrupt book whose moves are not
+     *  legal, even those that are not the encodings of moves at all. */
+    @Test
+    public void testCorrupt() throws IOException {
+        Board board = new Board();
+        MoveList moves = new MoveList();
+        board.getMoves(moves);
+        long legal = moves.get(0);
+        ArrayList<long[]> entries = new ArrayList<>();
+        entries.add(new long[] { board.key(), -2, 1000, 0 });
+        entries.add(new long[] {
+            board.key(), Move.encode(Move.parseMove("a1-a2")), 1000, 0
+        });
+        entries.add(new long[] { board.key(), legal, 1, 0 });
+        File file = File.createTempFile("qirkat", ".book");
+        file.deleteOnExit();
+        OpeningBook.write(file.getPath(), entries);
+        Game game = new Game(board, (prompt) -> null, new TextReporter());
+        game.doBook(new String[] { file.getPath() });
+        AI ai = new AI(game, WHITE);
+        assertEquals(Move.decode(legal), ai.myMove());
+    }
+
+    /** Every move in the book is legal in its position, each of which
+     *  is reached by the book's moves from the initial position. */
+    @Test
+    public void testMovesLegal() throws IOException {
+        OpeningBook book = book();
+        HashSet<Integer> reached = new HashSet<>();
+        checkMoves(book, new Board(), reached);
+        assertEquals(book.size(), reached.size());
+    }
+
+    /** Check that the entries of BOOK for the position on BOARD, and for
+     *  those their moves lead to, are legal moves, adding the indices of
+     *  the entries checked to REACHED. */
+    private static void checkMoves(OpeningBook book, Board board,
+                                   HashSet<Integer> reached) {
+        int first = book.find(board.key());
+        if (first == -1 || reached.contains(first)) {
+            return;
+        }
+        for (int k = first; k < book.size() && book.key(k) == board.key();
+             k += 1) {
+            reached.add(k);
+            Move move = Move.decode(book.move(k));
+            assertNotNull(move);
+            assertTrue(board.legalMove(move));
+            board.makeMove(move);
+            checkMoves(book, board, reached);
+            board.undo();
+        }
+    }
+}
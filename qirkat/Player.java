@@ -31,6 +31,11 @@ abstract class Player {
      *  board.whoseMove() == myColor and that !board.gameOver(). */
     abstract Move myMove();
 
+    /** Note that the game I am playing has ended or been abandoned, so
+     *  that I may stop any work on it.  By default, does nothing. */
+    void endGame() {
+    }
+
     /** The game I am playing in. */
     private final Game _game;
     /** The color of my pieces. */
@@ -0,0 +1,395 @@
+package qirkat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+import static qirkat.PieceColor.*;
+import static qirkat.Move.MAX_INDEX;
+
+/** An endgame tablebase: for each position with at most maxPieces()
+ *  pieces, at least one of each color, whether the player to move wins
+ *  or loses with best play on both sides, and how many moves remain.
+ *  The values of positions are bytes: D > 0 if the player to move wins
+ *  in D moves (plies), -D - 1 if that player loses in D moves, and 0
+ *  for a combination of squares that is not a position.
+ *
+ *  The values for each number of white and of black pieces occupy a
+ *  block, ordered by the player to move, the set of white squares, the
+ *  set of black squares, and the horizontal restrictions on the pieces
+ *  (see index).  A tablebase file holds MAGIC, maxPieces(), and then
+ *  the blocks in order of increasing total number of pieces, so that it
+ *  can be mapped into memory and used directly.
+ *
+ *  Pieces never move backward, a piece may keep stepping sideways only
+ *  in the direction it started, and every capture removes a piece, so
+ *  no position can recur, and every position is either won or lost.  A
+ *  depth-first search that records the value of every position it
+ *  finishes therefore reaches the same values as retrograde analysis,
+ *  with less bookkeeping.  Positions with fewer pieces are done first,
+ *  so that the results of captures are always known; those with the
+ *  same numbers of pieces are divided among all available processors,
+ *  which share the table without locks, since a value that one thread
+ *  has not yet seen is simply computed again.
+ *  @author Chris Sreesangkom
+ */
+class Tablebase {
+
+    /** Generate a tablebase for positions with at most ARGS[0] pieces,
+     *  and write it to the file named ARGS[1]. */
+    public static void main(String[] args) {
+        int maxPieces = 0;
+        if (args.length == 2 && args[0].matches("\\d+")) {
+            maxPieces = Integer.parseInt(args[0]);
+        }
+        if (maxPieces < 2 || maxPieces > MAX_PIECES) {
+            System.err.printf("Usage: java qirkat.Tablebase N FILE,"
+                              + " where 2 <= N <= %d%n", MAX_PIECES);
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        byte[] values = new byte[size(maxPieces)];
+        generate(maxPieces, values);
+        try {
+            write(args[1], maxPieces, values);
+        } catch (IOException excp) {
+            System.err.printf("Could not write %s.%n", args[1]);
+            System.exit(1);
+        }
+        int won, lost;
+        won = lost = 0;
+        for (byte value : values) {
+            if (value > 0) {
+                won += 1;
+            } else if (value < 0) {
+                lost += 1;
+            }
+        }
+        System.out.printf("%d positions (%d won, %d lost) written to %s"
+                          + " in %d msec.%n", won + lost, won, lost,
+                          args[1], System.currentTimeMillis() - start);
+    }
+
+    /** A tablebase read from the file named FILENAME, which is mapped
+     *  into memory rather than read. */
+    Tablebase(String fileName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            if (file.length() < HEADER_SIZE || file.readInt() != MAGIC) {
+                throw new IOException("not a tablebase");
+            }
+            int maxPieces = file.readInt();
+            if (maxPieces < 2 || maxPieces > MAX_PIECES
+                || file.length() != HEADER_SIZE + size(maxPieces)) {
+                throw new IOException("bad tablebase");
+            }
+            _maxPieces = maxPieces;
+            _data = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                                          HEADER_SIZE, size(maxPieces));
+        }
+        _offsets = offsets(_maxPieces);
+    }
+
+    /** A tablebase for positions with at most MAXPIECES pieces, whose
+     *  values are in DATA. */
+    private Tablebase(int maxPieces, ByteBuffer data) {
+        _maxPieces = maxPieces;
+        _data = data;
+        _offsets = offsets(maxPieces);
+    }
+
+    /** Return a tablebase for positions with at most MAXPIECES pieces,
+     *  computed in memory. */
+    static Tablebase generate(int maxPieces) {
+        byte[] values = new byte[size(maxPieces)];
+        return generate(maxPieces, values);
+    }
+
+    /** Return the largest number of pieces in my positions. */
+    int maxPieces() {
+        return _maxPieces;
+    }
+
+    /** Return the value of the position on BOARD for the player to move,
+     *  as described above, or 0 if that position is not in me.  A player
+     *  with no pieces has lost. */
+    int probe(Board board) {
+        PieceColor player = board.whoseMove();
+        int mine = board.pieces(player),
+            theirs = board.pieces(player.opposite());
+        if (mine == 0) {
+            return -1;
+        } else if (theirs == 0
+                   || Integer.bitCount(mine | theirs) > _maxPieces) {
+            return 0;
+        }
+        return _data.get(index(board));
+    }
+
+    /** Return the number of moves to the end of the game from a position
+     *  of value VALUE (not 0). */
+    static int distance(int value) {
+        return value > 0 ? value : -value - 1;
+    }
+
+    /** Return the index in my data of the value of the position on
+     *  BOARD, which must be in me. */
+    private int index(Board board) {
+        int white = board.pieces(WHITE), black = board.pieces(BLACK);
+        int noLeft = board.noLeft(WHITE) | board.noLeft(BLACK),
+            noRight = board.noRight(WHITE) | board.noRight(BLACK);
+        int restrictions, scale;
+        restrictions = 0;
+        scale = 1;
+        for (int pieces : new int[] { white, black }) {
+            for (; pieces != 0; pieces &= pieces - 1) {
+                int bit = pieces & -pieces;
+                if ((noLeft & bit) != 0) {
+                    restrictions += scale * NO_LEFT;
+                } else if ((noRight & bit) != 0) {
+                    restrictions += scale * NO_RIGHT;
+                }
+                scale *= RESTRICTION_STATES;
+            }
+        }
+        int numWhite = Integer.bitCount(white),
+            numBlack = Integer.bitCount(black);
+        int side = board.whoseMove() == WHITE ? 0 : 1;
+        return _offsets[numWhite][numBlack]
+            + ((side * BINOMIAL[SQUARES][numWhite] + rank(white))
+               * BINOMIAL[SQUARES][numBlack] + rank(black)) * scale
+            + restrictions;
+    }
+
+    /** Fill VALUES with the values of all positions with at most
+     *  MAXPIECES pieces, and return a tablebase that uses them. */
+    private static Tablebase generate(int maxPieces, byte[] values) {
+        Tablebase table = new Tablebase(maxPieces, ByteBuffer.wrap(values));
+        for (int total = 2; total <= maxPieces; total += 1) {
+            for (int numWhite = 1; numWhite < total; numWhite += 1) {
+                int numBlack = total - numWhite;
+                ArrayList<Integer> whites = new ArrayList<>();
+                for (int white = (1 << numWhite) - 1; white <= ALL;
+                     white = nextSubset(white)) {
+                    whites.add(white);
+                }
+                IntStream.range(0, 2 * whites.size()).parallel().forEach(
+                    i -> new Evaluator(table, values)
+                         .evaluateAll(i % 2 == 0 ? WHITE : BLACK,
+                                      whites.get(i / 2), numBlack));
+            }
+        }
+        return table;
+    }
+
+    /** Write a tablebase file named FILENAME for positions with at most
+     *  MAXPIECES pieces, whose values are VALUES. */
+    private static void write(String fileName, int maxPieces,
+                              byte[] values) throws IOException {
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                                      new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(maxPieces);
+            out.write(values);
+        }
+    }
+
+    /** Computes the values of positions for a tablebase being generated.
+     *  Each thread uses its own Evaluator. */
+    private static class Evaluator {
+
+        /** An Evaluator that computes values of positions for TABLE,
+         *  whose values are VALUES. */
+        Evaluator(Tablebase table, byte[] values) {
+            _table = table;
+            _values = values;
+        }
+
+        /** Compute the values of all positions with PLAYER to move, white
+         *  pieces on the squares in WHITE, and NUMBLACK black pieces. */
+        void evaluateAll(PieceColor player, int white, int numBlack) {
+            int numPieces = Integer.bitCount(white) + numBlack;
+            int numRestrictions = 1;
+            for (int i = 0; i < numPieces; i += 1) {
+                numRestrictions *= RESTRICTION_STATES;
+            }
+            int[] squares = new int[numPieces];
+            for (int black = (1 << numBlack) - 1; black <= ALL;
+                 black = nextSubset(black)) {
+                if ((white & black) != 0) {
+                    continue;
+                }
+                int n;
+                n = 0;
+                for (int pieces : new int[] { white, black }) {
+                    for (; pieces != 0; pieces &= pieces - 1) {
+                        squares[n] = pieces & -pieces;
+                        n += 1;
+                    }
+                }
+                for (int r = 0; r < numRestrictions; r += 1) {
+                    int noLeft, noRight;
+                    noLeft = noRight = 0;
+                    for (int i = 0, code = r; i < numPieces;
+                         i += 1, code /= RESTRICTION_STATES) {
+                        if (code % RESTRICTION_STATES == NO_LEFT) {
+                            noLeft |= squares[i];
+                        } else if (code % RESTRICTION_STATES == NO_RIGHT) {
+                            noRight |= squares[i];
+                        }
+                    }
+                    _board.setPieces(white, black, noLeft, noRight, player);
+                    evaluate(0);
+                }
+            }
+        }
+
+        /** Return the value of the position on _board, which is DEPTH
+         *  moves from where evaluation started, recording it and the
+         *  values of all positions that follow from it without captures.
+         *  Leaves _board as it was. */
+        private int evaluate(int depth) {
+            int index = _table.index(_board);
+            if (_values[index] != 0) {
+                return _values[index];
+            }
+            if (depth == _moveLists.size()) {
+                _moveLists.add(new MoveList());
+            }
+            MoveList moves = _moveLists.get(depth);
+            moves.clear();
+            _board.getMoves(moves);
+            int best;
+            best = -1;
+            for (int i = 0; i < moves.size(); i += 1) {
+                long move = moves.get(i);
+                _board.makeMove(move);
+                int reply = Move.numJumps(move) > 0 ? _table.probe(_board)
+                    : evaluate(depth + 1);
+                _board.undo();
+                int value = reply < 0 ? -reply : -reply - 2;
+                if (i == 0 || preference(value) > preference(best)) {
+                    best = value;
+                }
+            }
+            if (best > Byte.MAX_VALUE || best < Byte.MIN_VALUE) {
+                throw new IllegalStateException("game too long");
+            }
+            _values[index] = (byte) best;
+            return best;
+        }
+
+        /** The tablebase being generated. */
+        private final Tablebase _table;
+        /** The values of _table. */
+        private final byte[] _values;
+        /** The board on which positions are set up and searched. */
+        private final Board _board = new Board();
+        /** Move lists for the evaluation, indexed by depth. */
+        private final ArrayList<MoveList> _moveLists = new ArrayList<>();
+    }
+
+    /** Return a number that is larger for position values VALUE that are
+     *  better for the player to move: wins beat losses, quicker wins beat
+     *  slower ones, and slower losses beat quicker ones. */
+    private static int preference(int value) {
+        return value > 0 ? Byte.MAX_VALUE + 1 - value
+            : Byte.MIN_VALUE - 1 - value;
+    }
+
+    /** Return the rank of the set of squares MASK among all sets of as
+     *  many squares, in order of their masks. */
+    private static int rank(int mask) {
+        int result, n;
+        result = n = 0;
+        for (; mask != 0; mask &= mask - 1) {
+            n += 1;
+            result += BINOMIAL[Integer.numberOfTrailingZeros(mask)][n];
+        }
+        return result;
+    }
+
+    /** Return the smallest mask greater than MASK with as many bits
+     *  set. */
+    private static int nextSubset(int mask) {
+        int low = mask & -mask, rippled = mask + low;
+        return rippled | (((mask ^ rippled) >>> 2) / low);
+    }
+
+    /** Return the number of values in a tablebase for positions with at
+     *  most MAXPIECES pieces. */
+    private static int size(int maxPieces) {
+        int[][] offsets = offsets(maxPieces);
+        return offsets[0][0];
+    }
+
+    /** Return the offsets of the blocks of a tablebase for positions with
+     *  at most MAXPIECES pieces: element [W][B] is the index of the
+     *  first value for positions with W white and B black pieces, and
+     *  element [0][0] is the total number of values. */
+    private static int[][] offsets(int maxPieces) {
+        int[][] result = new int[MAX_PIECES + 1][MAX_PIECES + 1];
+        long offset = 0;
+        for (int total = 2; total <= maxPieces; total += 1) {
+            long scale = 2;
+            for (int i = 0; i < total; i += 1) {
+                scale *= RESTRICTION_STATES;
+            }
+            for (int numWhite = 1; numWhite < total; numWhite += 1) {
+                int numBlack = total - numWhite;
+                result[numWhite][numBlack] = (int) offset;
+                offset += scale * BINOMIAL[SQUARES][numWhite]
+                    * BINOMIAL[SQUARES][numBlack];
+            }
+        }
+        assert offset <= Integer.MAX_VALUE;
+        result[0][0] = (int) offset;
+        return result;
+    }
+
+    /** Largest number of pieces for which a tablebase may be made. */
+    static final int MAX_PIECES = 5;
+
+    /** First word of a tablebase file ("QTB1"). */
+    private static final int MAGIC = 0x5154_4231;
+
+    /** Number of bytes in a tablebase file before the values. */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    /** Number of squares, and the mask of all of them. */
+    private static final int SQUARES = MAX_INDEX + 1,
+        ALL = Board.ALL_SQUARES;
+
+    /** Number of horizontal restriction states of a piece, and the codes
+     *  of the states other than being free to step either way. */
+    private static final int RESTRICTION_STATES = 3, NO_LEFT = 1,
+        NO_RIGHT = 2;
+
+    /** BINOMIAL[N][K] is the number of ways to choose K of N things. */
+    private static final int[][] BINOMIAL = new int[SQUARES + 1][SQUARES + 1];
+
+    static {
+        for (int n = 0; n <= SQUARES; n += 1) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k += 1) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+            }
+        }
+    }
+
+    /** Largest number of pieces in my positions. */
+    private final int _maxPieces;
+
+    /** _offsets[W][B] is the index in _data of the first value for
+     *  positions with W white and B black pieces (see offsets). */
+    private final int[][] _offsets;
+
+    /** My values. */
+    private final ByteBuffer _data;
+}
@@ -0,0 +1,59 @@
+package qirkat;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static qirkat.PieceColor.*;
+
+/** Tests of the Tablebase class.
+ *  @author Chris Sreesangkom
+ */
+public class TablebaseTest {
+
+    /** Masks of some squares. */
+    private static final int
+        C1 = 1 << Move.index('c', '1'),
+        E1 = 1 << Move.index('e', '1'),
+        C3 = 1 << Move.index('c', '3'),
+        C4 = 1 << Move.index('c', '4'),
+        A5 = 1 << Move.index('a', '5'),
+        E5 = 1 << Move.index('e', '5');
+
+    @Test
+    public void testProbe() {
+        Tablebase table = Tablebase.generate(2);
+        assertEquals(2, table.maxPieces());
+        Board b = new Board();
+        assertEquals(0, table.probe(b));
+        b.setPieces(C3, C4, 0, 0, WHITE);
+        assertEquals(1, table.probe(b));
+        b.setPieces(C3, C4, 0, 0, BLACK);
+        assertEquals(1, table.probe(b));
+        b.setPieces(A5, E1, 0, 0, WHITE);
+        assertEquals(-1, table.probe(b));
+        b.setPieces(C1, E5, 0, 0, WHITE);
+        int value = table.probe(b);
+        assertNotEquals(0, value);
+        int best = value > 0 ? Integer.MAX_VALUE : -1;
+        for (Move move : b.getMoves()) {
+            b.makeMove(move);
+            int reply = table.probe(b);
+            b.undo();
+            assertNotEquals(0, reply);
+            if (value < 0) {
+                assertTrue(reply > 0);
+                best = Math.max(best, Tablebase.distance(reply));
+            } else if (reply < 0) {
+                best = Math.min(best, Tablebase.distance(reply));
+            }
+        }
+        assertEquals(Tablebase.distance(value) - 1, best);
+    }
+
+    @Test
+    public void testDistance() {
+        assertEquals(3, Tablebase.distance(3));
+        assertEquals(0, Tablebase.distance(-1));
+        assertEquals(4, Tablebase.distance(-5));
+    }
+}
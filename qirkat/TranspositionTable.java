@@ -0,0 +1,147 @@
+package qirkat;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A fixed-size table of the results of searches from positions, indexed
+ *  by the positions' Zobrist keys (see Board.key).  Each entry records
+ *  the depth of a search, its score, whether that score is exact or
+ *  only a bound, and the best move found.
+ *
+ *  The table is divided into buckets of two entries.  The first entry
+ *  of a bucket holds the deepest search stored there by the current
+ *  search (depth-preferred); the second takes whatever the first will
+ *  not (always-replace).  Each entry is three longs: a data word, a
+ *  move, and a check word, the exclusive or of the key and the other
+ *  two.  An entry is used only if its check word matches, so that an
+ *  entry torn by simultaneous stores from different threads is simply
+ *  ignored, and the table needs no locks.
+ *  @author Chris Sreesangkom
+ */
+class TranspositionTable {
+
+    /** Bound types of entries: the score is exact, is a lower bound (the
+     *  search failed high), or is an upper bound (it failed low). */
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /** The result of a successful probe. */
+    static class Entry {
+        /** Depth of the search recorded. */
+        int depth;
+        /** Type of bound given by score: EXACT, LOWER, or UPPER. */
+        int bound;
+        /** Score found by the search. */
+        int score;
+        /** Encoding of the best move found, or -1 if none. */
+        long move;
+    }
+
+    /** A table of 2 ** BITS buckets. */
+    TranspositionTable(int bits) {
+        _mask = (1 << bits) - 1;
+        _table = new long[(_mask + 1) * BUCKET_SIZE * ENTRY_SIZE];
+    }
+
+    /** Start a new search.  Entries stored by previous searches may be
+     *  replaced regardless of depth. */
+    void newSearch() {
+        _age = (_age + 1) & AGE_MASK;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_table, 0);
+        _probes.reset();
+        _hits.reset();
+    }
+
+    /** If there is an entry for the position whose key is KEY, fill in
+     *  RESULT from it and return true.  Otherwise return false. */
+    boolean probe(long key, Entry result) {
+        _probes.increment();
+        int i = bucket(key);
+        for (int j = 0; j < BUCKET_SIZE; j += 1, i += ENTRY_SIZE) {
+            long data = _table[i], move = _table[i + 1];
+            if ((_table[i + 2] ^ data ^ move) == key && data != 0) {
+                result.score = (int) data;
+                result.depth = (int) (data >>> DEPTH_SHIFT) & DEPTH_MASK;
+                result.bound = (int) (data >>> BOUND_SHIFT) & BOUND_MASK;
+                result.move = move;
+                _hits.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Record that a search of DEPTH levels from the position with key
+     *  KEY gave SCORE, a bound of type BOUND, with best move MOVE (-1 if
+     *  none). */
+    void store(long key, int depth, int bound, int score, long move) {
+        long data = VALID | (long) _age << AGE_SHIFT
+            | (long) bound << BOUND_SHIFT
+            | (long) depth << DEPTH_SHIFT | (score & SCORE_MASK);
+        int i = bucket(key);
+        long old = _table[i];
+        if (((_table[i + 2] ^ old ^ _table[i + 1]) != key)
+            && ((int) (old >>> AGE_SHIFT) & AGE_MASK) == _age
+            && ((int) (old >>> DEPTH_SHIFT) & DEPTH_MASK) > depth) {
+            i += ENTRY_SIZE;
+        }
+        _table[i] = data;
+        _table[i + 1] = move;
+        _table[i + 2] = key ^ data ^ move;
+    }
+
+    /** Return the number of calls to probe since the last clear. */
+    long probes() {
+        return _probes.sum();
+    }
+
+    /** Return the number of calls to probe since the last clear that
+     *  found an entry. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return the index in _table of the first entry of the bucket for
+     *  KEY. */
+    private int bucket(long key) {
+        return ((int) (key >>> Integer.SIZE) & _mask)
+            * BUCKET_SIZE * ENTRY_SIZE;
+    }
+
+    /** Number of entries in a bucket, and of longs in an entry. */
+    private static final int BUCKET_SIZE = 2, ENTRY_SIZE = 3;
+
+    /** Positions and masks of the fields of a data word other than the
+     *  score, which occupies its low-order 32 bits. */
+    private static final int
+        DEPTH_SHIFT = 32, DEPTH_MASK = 255,
+        BOUND_SHIFT = 40, BOUND_MASK = 3,
+        AGE_SHIFT = 42, AGE_MASK = 255;
+
+    /** Mask for the score field of a data word. */
+    private static final long SCORE_MASK = 0xffffffffL;
+
+    /** Bit set in every data word in use. */
+    private static final long VALID = 1L << 63;
+
+    /** The entries, each as ENTRY_SIZE consecutive longs (data word,
+     *  move, check word), BUCKET_SIZE consecutive entries to a
+     *  bucket. */
+    private final long[] _table;
+
+    /** Mask giving a bucket number from a key. */
+    private final int _mask;
+
+    /** Age of the current search. */
+    private int _age;
+
+    /** Counts of probes and of probes that found an entry.  They are
+     *  LongAdders, so that threads sharing the table neither lose counts
+     *  nor contend for one memory location. */
+    private final LongAdder
+        _probes = new LongAdder(),
+        _hits = new LongAdder();
+}
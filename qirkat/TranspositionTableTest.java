@@ -0,0 +1,52 @@
+package qirkat;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static qirkat.TranspositionTable.*;
+
+/** Tests of the TranspositionTable class.
+ *  @author Chris Sreesangkom
+ */
+public class TranspositionTableTest {
+
+    /** Keys that fall in the same bucket of a small table. */
+    private static final long
+        KEY1 = 0x0000_0001_1234_5678L,
+        KEY2 = 0x0100_0001_8765_4321L,
+        KEY3 = 0x0200_0001_0f0f_0f0fL;
+
+    @Test
+    public void testStoreProbe() {
+        TranspositionTable table = new TranspositionTable(4);
+        Entry e = new Entry();
+        assertFalse(table.probe(KEY1, e));
+        table.store(KEY1, 5, LOWER, -17, 42);
+        assertTrue(table.probe(KEY1, e));
+        assertEquals(5, e.depth);
+        assertEquals(LOWER, e.bound);
+        assertEquals(-17, e.score);
+        assertEquals(42, e.move);
+        assertFalse(table.probe(KEY2, e));
+        assertEquals(3, table.probes());
+        assertEquals(1, table.hits());
+    }
+
+    @Test
+    public void testReplacement() {
+        TranspositionTable table = new TranspositionTable(4);
+        Entry e = new Entry();
+        table.store(KEY1, 8, EXACT, 1, -1);
+        table.store(KEY2, 3, EXACT, 2, -1);
+        table.store(KEY3, 4, EXACT, 3, -1);
+        assertTrue("deeper entry replaced", table.probe(KEY1, e));
+        assertFalse("always-replace entry kept", table.probe(KEY2, e));
+        assertTrue(table.probe(KEY3, e));
+        table.newSearch();
+        table.store(KEY2, 1, EXACT, 2, -1);
+        assertFalse("old entry kept", table.probe(KEY1, e));
+        assertTrue(table.probe(KEY2, e));
+        table.clear();
+        assertFalse(table.probe(KEY2, e));
+    }
+}
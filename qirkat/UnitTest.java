@@ -11,7 +11,13 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(MoveTest.class, BoardTest.class,
-                                      CommandTest.class));
+                                      CommandTest.class,
+                                      MoveListTest.class,
+                                      TranspositionTableTest.class,
+                                      EvalCacheTest.class,
+                                      TablebaseTest.class,
+                                      AITest.class,
+                                      OpeningBookTest.class));
     }
 
 }